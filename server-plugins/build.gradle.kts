@@ -14,6 +14,7 @@ subprojects {
     }
     tasks.withType(JavaCompile::class.java).configureEach {
       options.release.set(17)
+      options.encoding = "UTF-8"
     }
   }
 
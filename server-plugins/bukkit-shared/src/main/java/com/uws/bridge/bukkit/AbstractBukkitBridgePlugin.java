@@ -1,21 +1,33 @@
 package com.uws.bridge.bukkit;
 
+import com.destroystokyo.paper.event.server.ServerTickEndEvent;
+import com.destroystokyo.paper.event.server.ServerTickStartEvent;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 import com.uws.bridge.common.BridgeConfig;
 import com.uws.bridge.common.BridgeRequest;
 import com.uws.bridge.common.BridgeRequestHandler;
 import com.uws.bridge.common.BridgeResponse;
 import com.uws.bridge.common.BridgeServer;
+import com.uws.bridge.common.CpuSampler;
+import com.uws.bridge.common.EnvelopeWriter;
+import com.uws.bridge.common.MainThreadQueue.Lane;
+import com.uws.bridge.common.PayloadWriter;
+import com.uws.bridge.common.Payloads;
+import com.uws.bridge.common.SnapshotStore;
+import com.uws.bridge.common.TopicRegistry;
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 import java.util.logging.Level;
 import me.clip.placeholderapi.PlaceholderAPI;
@@ -36,21 +48,35 @@ import org.bukkit.ChatColor;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.World;
 import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.AsyncPlayerChatEvent;
+import org.bukkit.event.player.PlayerGameModeChangeEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerKickEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.RegisteredServiceProvider;
 import org.bukkit.plugin.java.JavaPlugin;
-import org.bukkit.scheduler.BukkitTask;
 
-public abstract class AbstractBukkitBridgePlugin extends JavaPlugin implements Listener, BridgeRequestHandler {
+public abstract class AbstractBukkitBridgePlugin extends JavaPlugin implements BridgeRequestHandler {
+  private static final int AVERAGE_TICKS = 100;
+
   private BridgeServer bridgeServer;
-  private BukkitTask metricsTask;
-  private final Set<String> subscribedTopics = ConcurrentHashMap.newKeySet();
+  private ServerScheduler scheduler;
+  private ServerScheduler.Task metricsTask;
+  private ServerScheduler.Task sampleTask;
+  private ServerScheduler.Task drainTask;
+  private ServerScheduler.Task tickTask;
+  private long lastTickNanos;
+  private final Listener playerListener = new PlayerActivityListener();
+  private final Listener chatListener = new ChatListener();
+  private final Listener snapshotListener = new SnapshotListener();
+  private Listener tickListener;
   private boolean placeholderApiAvailable;
   private LuckPerms luckPerms;
   private Economy economy;
@@ -58,11 +84,14 @@ public abstract class AbstractBukkitBridgePlugin extends JavaPlugin implements L
   @Override
   public void onEnable() {
     saveDefaultConfig();
-    getServer().getPluginManager().registerEvents(this, this);
+    scheduler = ServerScheduler.create(this);
     try {
       this.bridgeServer = new BridgeServer(buildConfig(), getLogger(), this);
       this.bridgeServer.setReuseAddr(true);
+      bindTopicHooks();
       this.bridgeServer.start();
+      drainTask = scheduler.repeat(bridgeServer.getMainThreadQueue()::drain, 1L, 1L);
+      startSampleTask();
       getLogger().info("U-WBP bridge server started");
     } catch (Exception ex) {
       getLogger().log(Level.SEVERE, "Unable to start bridge server", ex);
@@ -70,13 +99,15 @@ public abstract class AbstractBukkitBridgePlugin extends JavaPlugin implements L
       return;
     }
     initializeOptionalIntegrations();
-    startMetricsTask();
   }
 
   @Override
   public void onDisable() {
-    if (metricsTask != null) {
-      metricsTask.cancel();
+    stopMetricsTask();
+    stopSampleTask();
+    if (drainTask != null) {
+      drainTask.cancel();
+      drainTask = null;
     }
     if (bridgeServer != null) {
       try {
@@ -101,7 +132,10 @@ public abstract class AbstractBukkitBridgePlugin extends JavaPlugin implements L
     String serverId = getConfig().getString("bridge.serverId", getServer().getName());
     String version = getConfig().getString("bridge.version", Bukkit.getVersion());
     Duration heartbeat = Duration.ofSeconds(getConfig().getInt("bridge.heartbeatSeconds", 30));
-    return new BridgeConfig(bind, port, token, serverId, "Java", getCoreName(), version, heartbeat);
+    ConfigurationSection section = getConfig().getConfigurationSection("bridge");
+    return new BridgeConfig(bind, port, token, serverId, "Java", getCoreName(), version, heartbeat)
+        .withDataDirectory(getDataFolder().toPath())
+        .applyOptions(section != null ? section.getValues(false) : null);
   }
 
   protected BridgeServer getBridgeServer() {
@@ -126,40 +160,156 @@ public abstract class AbstractBukkitBridgePlugin extends JavaPlugin implements L
     economy = provider != null ? provider.getProvider() : null;
   }
 
+  private void bindTopicHooks() {
+    TopicRegistry topics = bridgeServer.getTopics();
+    topics.bind("players.activity", () -> registerListener(playerListener), () -> unregisterListener(playerListener));
+    topics.bind("chat.ingame", () -> registerListener(chatListener), () -> unregisterListener(chatListener));
+    topics.bind("metrics.tps", () -> runOnMainThread(this::startMetricsTask), () -> runOnMainThread(this::stopMetricsTask));
+  }
+
+  private void registerListener(Listener listener) {
+    runOnMainThread(() -> getServer().getPluginManager().registerEvents(listener, this));
+  }
+
+  private void unregisterListener(Listener listener) {
+    runOnMainThread(() -> HandlerList.unregisterAll(listener));
+  }
+
+  private void runOnMainThread(Runnable task) {
+    if (scheduler.isGlobalThread()) {
+      task.run();
+    } else if (isEnabled()) {
+      scheduler.run(task);
+    }
+  }
+
   private void startMetricsTask() {
-    metricsTask = Bukkit.getScheduler().runTaskTimer(this, () -> {
-      if (!subscribedTopics.contains("metrics.tps")) {
+    if (metricsTask != null || !isEnabled()) {
+      return;
+    }
+    metricsTask = scheduler.repeat(() -> {
+      if (!isSubscribed("metrics.tps")) {
         return;
       }
-      JsonObject metrics = new JsonObject();
-      double[] tps = readServerTps();
-      metrics.addProperty("tps", tps[0]);
-      metrics.addProperty("mspt", Math.round((1000.0 / Math.max(tps[0], 0.0001)) * 100.0) / 100.0);
-      metrics.addProperty("players", Bukkit.getOnlinePlayers().size());
-      metrics.addProperty("maxPlayers", Bukkit.getMaxPlayers());
-      broadcast("metrics.tps", metrics);
+      broadcast("metrics.tps", "metrics.tps", tickLoad());
     }, 20L, 20L);
   }
 
+  private void stopMetricsTask() {
+    if (metricsTask != null) {
+      metricsTask.cancel();
+      metricsTask = null;
+    }
+  }
+
+  private void startSampleTask() {
+    if (bridgeServer.getSnapshots().isEnabled()) {
+      getServer().getPluginManager().registerEvents(snapshotListener, this);
+    }
+    sampleTask = scheduler.repeat(this::sampleServer, 1L, 20L);
+    if (!scheduler.isRegionized() && hasPaperTickEvents()) {
+      tickListener = new TickListener();
+      getServer().getPluginManager().registerEvents(tickListener, this);
+    } else {
+      tickTask = scheduler.repeat(this::sampleTickInterval, 1L, 1L);
+    }
+  }
+
+  private void stopSampleTask() {
+    if (sampleTask != null) {
+      sampleTask.cancel();
+      sampleTask = null;
+    }
+    if (tickTask != null) {
+      tickTask.cancel();
+      tickTask = null;
+    }
+    if (tickListener != null) {
+      HandlerList.unregisterAll(tickListener);
+      tickListener = null;
+    }
+    HandlerList.unregisterAll(snapshotListener);
+  }
+
+  private static boolean hasPaperTickEvents() {
+    try {
+      Class.forName("com.destroystokyo.paper.event.server.ServerTickEndEvent");
+      return true;
+    } catch (ClassNotFoundException ignored) {
+      return false;
+    }
+  }
+
+  private void sampleTickInterval() {
+    bridgeServer.getLagWatchdog().tickStart();
+    long now = System.nanoTime();
+    if (lastTickNanos != 0) {
+      bridgeServer.getTickSampler().record(now - lastTickNanos, now);
+    }
+    lastTickNanos = now;
+  }
+
+  private void sampleServer() {
+    double tps = readServerTps()[0];
+    bridgeServer.recordTick(tps, Math.round(readTickTime(tps) * 100.0) / 100.0, Bukkit.getOnlinePlayers().size(), Bukkit.getMaxPlayers());
+    SnapshotStore snapshots = bridgeServer.getSnapshots();
+    if (!snapshots.isEnabled()) {
+      return;
+    }
+    int maxPlayers = Bukkit.getMaxPlayers();
+    if (scheduler.isRegionized()) {
+      List<CompletableFuture<Void>> sampled = new ArrayList<>();
+      for (Player player : Bukkit.getOnlinePlayers()) {
+        sampled.add(CompletableFuture.runAsync(() -> {
+          if (player.isOnline()) {
+            snapshotPlayer(snapshots, player);
+          }
+        }, scheduler.forEntity(player)));
+      }
+      CompletableFuture.allOf(sampled.toArray(new CompletableFuture<?>[0]))
+          .whenComplete((unused, error) -> snapshots.sweepPlayers(maxPlayers));
+    } else {
+      for (Player player : Bukkit.getOnlinePlayers()) {
+        snapshotPlayer(snapshots, player);
+      }
+      snapshots.sweepPlayers(maxPlayers);
+    }
+    Plugin[] plugins = getServer().getPluginManager().getPlugins();
+    int stamp = Objects.hash(getServer().getOnlinePlayers().size(), getServer().getMaxPlayers(), getServer().getMotd(),
+        getServer().hasWhitelist(), getServer().getOnlineMode(), plugins.length);
+    snapshots.publish(SnapshotStore.SERVER_INFO, stamp, () -> buildServerInfo().getPayload());
+  }
+
+  private void snapshotPlayer(SnapshotStore snapshots, Player player) {
+    String auth = getServer().getOnlineMode() ? "online" : "offline";
+    int stamp = Objects.hash(player.getPing(), player.isOp(), player.getGameMode(), auth);
+    snapshots.updatePlayer(player.getUniqueId(), stamp, () -> out -> writePlayer(out, player, auth));
+  }
+
   @Override
   public CompletableFuture<BridgeResponse> handle(BridgeRequest request) {
     switch (request.getCmd()) {
       case "getCapabilities":
         return CompletableFuture.completedFuture(BridgeResponse.success(buildCapabilitiesPayload()));
       case "getServerInfo":
-        return supplySync(this::buildServerInfo);
+        return bridgeServer.getSnapshots().serve(request, () -> supplySync(Lane.BULK, this::buildServerInfo));
       case "getPlayers":
-        return supplySync(this::buildPlayers);
+        return bridgeServer.getSnapshots().serve(request, this::readPlayers);
       case "getUsage":
-        return supplySync(this::buildUsage);
+        if (bridgeServer.getSnapshots().hasTick(request)) {
+          SnapshotStore snapshots = bridgeServer.getSnapshots();
+          return CompletableFuture.completedFuture(buildUsage(snapshots.getTps(), snapshots.getMspt()));
+        }
+        return supplySync(Lane.BULK, () -> {
+          double tps = readServerTps()[0];
+          return buildUsage(tps, readTickTime(tps));
+        });
       case "control":
-        return supplySync(() -> handleControl(request.getData()));
+        return supplyFor(controlTarget(request.getData()), Lane.forControl(request.getData()), () -> handleControl(request.getData()));
       case "console.exec":
-        return supplySync(() -> handleConsoleExec(request.getData()));
-      case "subscribe":
-        return CompletableFuture.completedFuture(handleSubscribe(request.getData()));
+        return supplySync(Lane.NORMAL, () -> handleConsoleExec(request.getData()));
       case "ext.papi.resolve":
-        return supplySync(() -> handlePlaceholderResolve(request.getData()));
+        return supplyFor(onlinePlayer(request.getData(), "player"), Lane.BULK, () -> handlePlaceholderResolve(request.getData()));
       case "ext.lp.getGroups":
         return handleLuckPermsGetGroups();
       case "ext.lp.getPlayerGroups":
@@ -173,36 +323,18 @@ public abstract class AbstractBukkitBridgePlugin extends JavaPlugin implements L
       case "ext.lp.check":
         return handleLuckPermsCheckPermission(request.getData());
       case "ext.vault.getBalance":
-        return supplySync(() -> handleVaultBalance(request.getData()));
+        return supplySync(Lane.BULK, () -> handleVaultBalance(request.getData()));
       case "ext.vault.deposit":
-        return supplySync(() -> handleVaultDeposit(request.getData()));
+        return supplySync(Lane.NORMAL, () -> handleVaultDeposit(request.getData()));
       case "ext.vault.withdraw":
-        return supplySync(() -> handleVaultWithdraw(request.getData()));
+        return supplySync(Lane.NORMAL, () -> handleVaultWithdraw(request.getData()));
       case "ext.vault.transfer":
-        return supplySync(() -> handleVaultTransfer(request.getData()));
+        return supplySync(Lane.NORMAL, () -> handleVaultTransfer(request.getData()));
       default:
         return CompletableFuture.completedFuture(BridgeResponse.failure("unsupported command"));
     }
   }
 
-  private BridgeResponse handleSubscribe(JsonObject payload) {
-    if (payload == null || !payload.has("topics") || !payload.get("topics").isJsonArray()) {
-      return BridgeResponse.failure("missing topics");
-    }
-    payload.getAsJsonArray("topics").forEach(element -> {
-      if (element.isJsonObject() && element.getAsJsonObject().has("name")) {
-        subscribedTopics.add(element.getAsJsonObject().get("name").getAsString());
-      } else if (element.isJsonPrimitive()) {
-        subscribedTopics.add(element.getAsString());
-      }
-    });
-    JsonObject data = new JsonObject();
-    JsonArray names = new JsonArray();
-    subscribedTopics.forEach(names::add);
-    data.add("topics", names);
-    return BridgeResponse.success(data);
-  }
-
   private BridgeResponse handleConsoleExec(JsonObject payload) {
     String command = payload != null && payload.has("command") ? payload.get("command").getAsString() : null;
     if (command == null || command.isEmpty()) {
@@ -336,6 +468,8 @@ public abstract class AbstractBukkitBridgePlugin extends JavaPlugin implements L
     baseCaps.add("core.info");
     baseCaps.add("players.list");
     baseCaps.add("metrics.tps");
+    baseCaps.add("metrics.lag");
+    baseCaps.add("diag.profiler");
     baseCaps.add("control.runCommand");
     baseCaps.add("control.setWeather");
     baseCaps.add("control.setTime");
@@ -367,11 +501,7 @@ public abstract class AbstractBukkitBridgePlugin extends JavaPlugin implements L
     baseCaps.addAll(getExtraCapabilities());
     baseCaps.forEach(caps::add);
     data.add("caps", caps);
-    JsonObject limits = new JsonObject();
-    limits.addProperty("rate.qps", 20);
-    limits.addProperty("timeout.ms", 5000);
-    limits.addProperty("maxBatch", 64);
-    data.add("limits", limits);
+    data.add("limits", bridgeServer.getConfig().buildLimits());
     return data;
   }
 
@@ -399,48 +529,108 @@ public abstract class AbstractBukkitBridgePlugin extends JavaPlugin implements L
     return BridgeResponse.success(data);
   }
 
-  private BridgeResponse buildPlayers() {
-    JsonObject data = new JsonObject();
-    JsonArray players = new JsonArray();
+  private PayloadWriter tickLoad() {
+    double[] tps = readServerTps();
+    double mspt = Math.round(readTickTime(tps[0]) * 100.0) / 100.0;
+    return Payloads.metricsTick(tps[0], mspt, Bukkit.getOnlinePlayers().size(), Bukkit.getMaxPlayers(),
+        bridgeServer != null ? bridgeServer.getTickSampler().windows() : null);
+  }
+
+  private CompletableFuture<BridgeResponse> readPlayers() {
+    if (!scheduler.isRegionized()) {
+      return supplySync(Lane.BULK, this::buildPlayers);
+    }
+    if (!bridgeServer.getHealth().admits(Lane.BULK)) {
+      return CompletableFuture.completedFuture(bridgeServer.getHealth().busy());
+    }
+    String auth = getServer().getOnlineMode() ? "online" : "offline";
+    List<CompletableFuture<String>> rows = new ArrayList<>();
     for (Player player : Bukkit.getOnlinePlayers()) {
-      JsonObject entry = new JsonObject();
-      entry.addProperty("name", player.getName());
-      entry.addProperty("uuid", player.getUniqueId().toString());
-      entry.addProperty("ip", player.getAddress() != null ? player.getAddress().getAddress().getHostAddress() : "");
-      entry.addProperty("platform", "Java");
-      entry.addProperty("auth", getServer().getOnlineMode() ? "online" : "offline");
-      entry.addProperty("ping", player.getPing());
-      entry.addProperty("op", player.isOp());
-      entry.addProperty("gamemode", player.getGameMode().name().toLowerCase());
-      entry.addProperty("firstJoin", player.getFirstPlayed());
-      entry.addProperty("lastSeen", player.getLastPlayed());
-      players.add(entry);
-    }
-    data.addProperty("count", players.size());
-    data.add("players", players);
-    data.addProperty("maxPlayers", Bukkit.getMaxPlayers());
-    return BridgeResponse.success(data);
+      rows.add(CompletableFuture.supplyAsync(
+              () -> player.isOnline() ? EnvelopeWriter.encodePayload(out -> writePlayer(out, player, auth)) : null,
+              scheduler.forEntity(player))
+          .exceptionally(throwable -> null));
+    }
+    int maxPlayers = Bukkit.getMaxPlayers();
+    return CompletableFuture.allOf(rows.toArray(new CompletableFuture<?>[0])).thenApply(unused -> {
+      List<String> entries = new ArrayList<>(rows.size());
+      for (CompletableFuture<String> row : rows) {
+        String entry = row.join();
+        if (entry != null) {
+          entries.add(entry);
+        }
+      }
+      return BridgeResponse.encoded(out -> {
+        out.beginObject();
+        out.name("count").value(entries.size());
+        out.name("players").beginArray();
+        for (String entry : entries) {
+          out.jsonValue(entry);
+        }
+        out.endArray();
+        out.name("maxPlayers").value(maxPlayers);
+        out.endObject();
+      });
+    });
+  }
+
+  private BridgeResponse buildPlayers() {
+    String auth = getServer().getOnlineMode() ? "online" : "offline";
+    return BridgeResponse.encoded(out -> {
+      out.beginObject();
+      out.name("count").value(Bukkit.getOnlinePlayers().size());
+      out.name("players").beginArray();
+      for (Player player : Bukkit.getOnlinePlayers()) {
+        writePlayer(out, player, auth);
+      }
+      out.endArray();
+      out.name("maxPlayers").value(Bukkit.getMaxPlayers());
+      out.endObject();
+    });
   }
 
-  private BridgeResponse buildUsage() {
+  private void writePlayer(JsonWriter out, Player player, String auth) throws IOException {
+    Payloads.writePlayerEntry(
+        out,
+        player.getName(),
+        player.getUniqueId().toString(),
+        player.getAddress() != null ? player.getAddress().getAddress().getHostAddress() : "",
+        auth,
+        player.getPing(),
+        player.isOp(),
+        player.getGameMode().name().toLowerCase(),
+        player.getFirstPlayed(),
+        player.getLastPlayed());
+  }
+
+  private BridgeResponse buildUsage(double tps, double mspt) {
     JsonObject data = new JsonObject();
-    double[] tps = readServerTps();
-    data.addProperty("tps", tps[0]);
+    data.addProperty("tps", tps);
     Runtime runtime = Runtime.getRuntime();
     double used = (runtime.totalMemory() - runtime.freeMemory()) / 1048576.0;
     double max = runtime.maxMemory() / 1048576.0;
     data.addProperty("memory", Math.round((used / max) * 10000.0) / 100.0);
-    data.addProperty("cpu", -1);
-    data.addProperty("tickTime", Math.round((1000.0 / Math.max(tps[0], 0.0001)) * 100.0) / 100.0);
-    data.addProperty("threads", Thread.activeCount());
+    data.addProperty("tickTime", Math.round(mspt * 100.0) / 100.0);
+    data.addProperty("threads", ManagementFactory.getThreadMXBean().getThreadCount());
     data.addProperty("uptime", System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime());
+    if (bridgeServer != null) {
+      data.add("transport", bridgeServer.buildTransportStats());
+      data.add("mainThread", bridgeServer.getMainThreadQueue().buildStats());
+      data.add("health", bridgeServer.getHealth().buildStats());
+      data.add("tickTimes", bridgeServer.getTickSampler().buildStats());
+      data.add("lag", bridgeServer.getLagWatchdog().buildStats());
+      CpuSampler cpu = bridgeServer.getCpuSampler();
+      data.addProperty("cpu", cpu.getProcessLoad());
+      data.addProperty("systemCpu", cpu.getSystemLoad());
+      data.add("cpuThreads", cpu.buildTopThreads());
+    }
     return BridgeResponse.success(data);
   }
 
   private double[] readServerTps() {
     try {
       return Bukkit.getServer().getTPS();
-    } catch (NoSuchMethodError err) {
+    } catch (NoSuchMethodError | UnsupportedOperationException err) {
       try {
         Object spigot = Bukkit.getServer().getClass().getMethod("getServer").invoke(Bukkit.getServer());
         double[] values = (double[]) spigot.getClass().getField("recentTps").get(spigot);
@@ -451,39 +641,40 @@ public abstract class AbstractBukkitBridgePlugin extends JavaPlugin implements L
     }
   }
 
-  private void broadcast(String cmd, JsonObject payload) {
+  private double readTickTime(double tps) {
+    try {
+      return Bukkit.getServer().getAverageTickTime();
+    } catch (NoSuchMethodError | UnsupportedOperationException err) {
+      double sampled = bridgeServer != null ? bridgeServer.getTickSampler().averageMillis(AVERAGE_TICKS) : 0.0;
+      return sampled > 0 ? sampled : 1000.0 / Math.max(tps, 0.0001);
+    }
+  }
+
+  private boolean isSubscribed(String topic) {
+    return bridgeServer != null && bridgeServer.hasSubscribers(topic);
+  }
+
+  private void broadcast(String topic, String cmd, PayloadWriter payload) {
     if (bridgeServer != null) {
-      bridgeServer.broadcast(cmd, payload);
+      bridgeServer.broadcast(topic, cmd, payload);
     }
   }
 
   protected void emitPlayerEvent(String type, Player player) {
-    if (!subscribedTopics.contains("players.activity")) {
+    if (!isSubscribed("players.activity")) {
       return;
     }
-    JsonObject data = new JsonObject();
-    data.addProperty("eventId", UUID.randomUUID().toString());
-    data.addProperty("timestamp", System.currentTimeMillis());
-    data.addProperty("type", type);
-    JsonObject playerData = new JsonObject();
-    playerData.addProperty("name", player.getName());
-    playerData.addProperty("uuid", player.getUniqueId().toString());
-    playerData.addProperty("ip", player.getAddress() != null ? player.getAddress().getAddress().getHostAddress() : "");
-    data.add("player", playerData);
-    broadcast("events.player", data);
+    String ip = player.getAddress() != null ? player.getAddress().getAddress().getHostAddress() : "";
+    broadcast("players.activity", "events.player", Payloads.playerEvent(
+        bridgeServer.nextId(), System.currentTimeMillis(), type, player.getName(), player.getUniqueId().toString(), ip));
   }
 
   protected void emitChatEvent(Player player, String message) {
-    if (!subscribedTopics.contains("chat.ingame")) {
+    if (!isSubscribed("chat.ingame")) {
       return;
     }
-    JsonObject data = new JsonObject();
-    data.addProperty("eventId", UUID.randomUUID().toString());
-    data.addProperty("timestamp", System.currentTimeMillis());
-    data.addProperty("player", player.getName());
-    data.addProperty("uuid", player.getUniqueId().toString());
-    data.addProperty("message", message);
-    broadcast("events.chat", data);
+    broadcast("chat.ingame", "events.chat", Payloads.chatEvent(
+        bridgeServer.nextId(), System.currentTimeMillis(), player.getName(), player.getUniqueId().toString(), message));
   }
 
   private BridgeResponse handlePlaceholderResolve(JsonObject payload) {
@@ -751,35 +942,94 @@ public abstract class AbstractBukkitBridgePlugin extends JavaPlugin implements L
     return null;
   }
 
-  @EventHandler
-  public void onPlayerJoin(PlayerJoinEvent event) {
-    emitPlayerEvent("join", event.getPlayer());
+  private CompletableFuture<BridgeResponse> supplySync(Lane lane, Supplier<BridgeResponse> supplier) {
+    return bridgeServer.runOnMainThread(lane, supplier);
+  }
+
+  private CompletableFuture<BridgeResponse> supplyFor(Player player, Lane lane, Supplier<BridgeResponse> supplier) {
+    if (player == null) {
+      return supplySync(lane, supplier);
+    }
+    return bridgeServer.runOn(lane, scheduler.forEntity(player), supplier);
   }
 
-  @EventHandler
-  public void onPlayerQuit(PlayerQuitEvent event) {
-    emitPlayerEvent("quit", event.getPlayer());
+  private Player controlTarget(JsonObject payload) {
+    if (payload == null || !payload.has("action") || !"kickPlayer".equals(payload.get("action").getAsString())
+        || !payload.has("params") || !payload.get("params").isJsonObject()) {
+      return null;
+    }
+    return onlinePlayer(payload.getAsJsonObject("params"), "player");
   }
 
-  @EventHandler
-  public void onPlayerKick(PlayerKickEvent event) {
-    emitPlayerEvent("kick", event.getPlayer());
+  private Player onlinePlayer(JsonObject payload, String key) {
+    if (!scheduler.isRegionized() || payload == null || !payload.has(key) || payload.get(key).getAsString().isEmpty()) {
+      return null;
+    }
+    return Bukkit.getPlayerExact(payload.get(key).getAsString());
   }
 
-  @EventHandler
-  public void onChat(AsyncPlayerChatEvent event) {
-    emitChatEvent(event.getPlayer(), event.getMessage());
+  private class PlayerActivityListener implements Listener {
+    @EventHandler
+    public void onPlayerJoin(PlayerJoinEvent event) {
+      emitPlayerEvent("join", event.getPlayer());
+    }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+      emitPlayerEvent("quit", event.getPlayer());
+    }
+
+    @EventHandler
+    public void onPlayerKick(PlayerKickEvent event) {
+      emitPlayerEvent("kick", event.getPlayer());
+    }
   }
 
-  private CompletableFuture<BridgeResponse> supplySync(Supplier<BridgeResponse> supplier) {
-    CompletableFuture<BridgeResponse> future = new CompletableFuture<>();
-    Bukkit.getScheduler().runTask(this, () -> {
-      try {
-        future.complete(supplier.get());
-      } catch (Throwable throwable) {
-        future.completeExceptionally(throwable);
-      }
-    });
-    return future;
+  private class SnapshotListener implements Listener {
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+      SnapshotStore snapshots = bridgeServer.getSnapshots();
+      snapshotPlayer(snapshots, event.getPlayer());
+      snapshots.publishPlayers(Bukkit.getMaxPlayers());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+      SnapshotStore snapshots = bridgeServer.getSnapshots();
+      snapshots.removePlayer(event.getPlayer().getUniqueId());
+      snapshots.publishPlayers(Bukkit.getMaxPlayers());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onGameModeChange(PlayerGameModeChangeEvent event) {
+      Player player = event.getPlayer();
+      scheduler.forEntity(player).execute(() -> {
+        if (player.isOnline()) {
+          SnapshotStore snapshots = bridgeServer.getSnapshots();
+          snapshotPlayer(snapshots, player);
+          snapshots.publishPlayers(Bukkit.getMaxPlayers());
+        }
+      });
+    }
+  }
+
+  private class TickListener implements Listener {
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onTickStart(ServerTickStartEvent event) {
+      bridgeServer.getLagWatchdog().tickStart();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onTickEnd(ServerTickEndEvent event) {
+      bridgeServer.getTickSampler().record((long) (event.getTickDuration() * 1_000_000.0), System.nanoTime());
+      bridgeServer.getLagWatchdog().tickEnd();
+    }
+  }
+
+  private class ChatListener implements Listener {
+    @EventHandler
+    public void onChat(AsyncPlayerChatEvent event) {
+      emitChatEvent(event.getPlayer(), event.getMessage());
+    }
   }
 }
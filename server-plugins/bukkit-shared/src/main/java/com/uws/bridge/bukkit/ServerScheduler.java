@@ -0,0 +1,108 @@
+package com.uws.bridge.bukkit;
+
+import java.util.concurrent.Executor;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+
+abstract class ServerScheduler {
+  interface Task {
+    void cancel();
+  }
+
+  protected final Plugin plugin;
+
+  private ServerScheduler(Plugin plugin) {
+    this.plugin = plugin;
+  }
+
+  static ServerScheduler create(Plugin plugin) {
+    return isFolia() ? new Regionized(plugin) : new Legacy(plugin);
+  }
+
+  private static boolean isFolia() {
+    try {
+      Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+      return true;
+    } catch (ClassNotFoundException ignored) {
+      return false;
+    }
+  }
+
+  abstract boolean isRegionized();
+
+  abstract boolean isGlobalThread();
+
+  abstract void run(Runnable task);
+
+  abstract Task repeat(Runnable task, long delayTicks, long periodTicks);
+
+  abstract Executor forEntity(Entity entity);
+
+  private static final class Legacy extends ServerScheduler {
+    Legacy(Plugin plugin) {
+      super(plugin);
+    }
+
+    @Override
+    boolean isRegionized() {
+      return false;
+    }
+
+    @Override
+    boolean isGlobalThread() {
+      return Bukkit.isPrimaryThread();
+    }
+
+    @Override
+    void run(Runnable task) {
+      Bukkit.getScheduler().runTask(plugin, task);
+    }
+
+    @Override
+    Task repeat(Runnable task, long delayTicks, long periodTicks) {
+      return Bukkit.getScheduler().runTaskTimer(plugin, task, delayTicks, periodTicks)::cancel;
+    }
+
+    @Override
+    Executor forEntity(Entity entity) {
+      return this::run;
+    }
+  }
+
+  private static final class Regionized extends ServerScheduler {
+    Regionized(Plugin plugin) {
+      super(plugin);
+    }
+
+    @Override
+    boolean isRegionized() {
+      return true;
+    }
+
+    @Override
+    boolean isGlobalThread() {
+      return Bukkit.isGlobalTickThread();
+    }
+
+    @Override
+    void run(Runnable task) {
+      Bukkit.getGlobalRegionScheduler().execute(plugin, task);
+    }
+
+    @Override
+    Task repeat(Runnable task, long delayTicks, long periodTicks) {
+      return Bukkit.getGlobalRegionScheduler()
+          .runAtFixedRate(plugin, scheduled -> task.run(), Math.max(1L, delayTicks), Math.max(1L, periodTicks))::cancel;
+    }
+
+    @Override
+    Executor forEntity(Entity entity) {
+      return task -> {
+        if (entity.getScheduler().run(plugin, scheduled -> task.run(), task) == null) {
+          run(task);
+        }
+      };
+    }
+  }
+}
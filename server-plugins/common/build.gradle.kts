@@ -8,7 +8,38 @@ java {
   }
 }
 
+val jmh by sourceSets.creating {
+  compileClasspath += sourceSets.main.get().output
+  runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations[jmh.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+
 dependencies {
   api("com.google.code.gson:gson:2.10.1")
   api("org.java-websocket:Java-WebSocket:1.5.3")
+
+  testImplementation(platform("org.junit:junit-bom:5.10.2"))
+  testImplementation("org.junit.jupiter:junit-jupiter")
+  testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+
+  "jmhImplementation"("org.openjdk.jmh:jmh-core:1.37")
+  "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
+}
+
+tasks.test {
+  useJUnitPlatform()
+}
+
+tasks.check {
+  dependsOn(jmh.classesTaskName)
+}
+
+// gradle :common:jmh -Pjmh="EnvelopeDecode -prof gc"
+tasks.register<JavaExec>("jmh") {
+  group = "verification"
+  description = "Runs the JMH benchmarks in src/jmh."
+  classpath = jmh.runtimeClasspath
+  mainClass.set("org.openjdk.jmh.Main")
+  args((findProperty("jmh") as String? ?: "").split(" ").filter { it.isNotBlank() })
 }
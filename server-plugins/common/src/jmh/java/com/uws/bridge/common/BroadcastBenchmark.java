@@ -0,0 +1,202 @@
+package com.uws.bridge.common;
+
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketAdapter;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.enums.ReadyState;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.handshake.Handshakedata;
+import org.java_websocket.server.WebSocketServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+  private static final String TOPIC = "chat.ingame";
+
+  @Param({"1", "10", "50"})
+  public int sockets;
+
+  private final List<WebSocketImpl> targets = new ArrayList<>();
+  private WebSocketServer server;
+  private String frame;
+
+  @Setup
+  public void setUp() throws ReflectiveOperationException {
+    frame = EnvelopeWriter.encodePush("events.chat", "0521f4bb0a998000", 42, chatPayload());
+    server = new IdleServer();
+    Listener listener = new Listener();
+    for (int i = 0; i < sockets; i++) {
+      targets.add(openSocket(listener));
+    }
+  }
+
+  @Benchmark
+  public int sendPerSocket() {
+    for (WebSocketImpl socket : targets) {
+      socket.send(frame);
+    }
+    return drain(targets);
+  }
+
+  @Benchmark
+  public int sharedFrames() {
+    server.broadcast(frame, new ArrayList<WebSocket>(targets));
+    return drain(targets);
+  }
+
+  @Benchmark
+  public int bridgeBroadcast(Bridge state) {
+    state.bridge.broadcast(TOPIC, "events.chat", state.payload);
+    return drain(state.clients);
+  }
+
+  @State(Scope.Thread)
+  public static class Bridge {
+    @Param({"json", "mixed"})
+    public String encoding;
+
+    final List<WebSocketImpl> clients = new ArrayList<>();
+    BridgeServer bridge;
+    PayloadWriter payload;
+
+    @Setup
+    public void setUp(BroadcastBenchmark benchmark) throws ReflectiveOperationException, InterruptedException {
+      payload = chatPayload();
+      Logger logger = Logger.getLogger(BroadcastBenchmark.class.getName());
+      logger.setLevel(Level.OFF);
+      BridgeConfig config = new BridgeConfig("127.0.0.1", 0, "tok", "srv", "Java", "Bench", "1", Duration.ofSeconds(60));
+      bridge = new BridgeServer(config, logger, request -> CompletableFuture.completedFuture(BridgeResponse.failure("unused")));
+      Listener listener = new Listener();
+      for (int i = 0; i < benchmark.sockets; i++) {
+        WebSocketImpl socket = openSocket(listener);
+        clients.add(socket);
+        bridge.onOpen(socket, null);
+        String requested = "mixed".equals(encoding) && i % 2 == 1 ? "cbor" : "json";
+        bridge.onMessage(socket, "{\"cmd\":\"auth\",\"requestId\":\"1\",\"data\":{\"token\":\"tok\",\"encoding\":\"" + requested + "\"}}");
+        bridge.onMessage(socket, "{\"cmd\":\"subscribe\",\"requestId\":\"2\",\"data\":{\"topics\":[\"" + TOPIC + "\"]}}");
+      }
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      for (WebSocketImpl socket : clients) {
+        while (socket.outQueue.size() < 2) {
+          if (System.nanoTime() > deadline) {
+            throw new IllegalStateException("bridge did not answer auth and subscribe");
+          }
+          Thread.sleep(1);
+        }
+      }
+      drain(clients);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+      bridge.stop(0);
+    }
+  }
+
+  private static PayloadWriter chatPayload() {
+    return Payloads.chatEvent("ev-1", 1792241065461L, "Steve", "069a79f4-44e9-4726-a5be-fca90e38aaf5", "hello from the benchmark");
+  }
+
+  private static WebSocketImpl openSocket(Listener listener) throws ReflectiveOperationException {
+    WebSocketImpl socket = new WebSocketImpl(listener, new Draft_6455());
+    Field state = WebSocketImpl.class.getDeclaredField("readyState");
+    state.setAccessible(true);
+    state.set(socket, ReadyState.OPEN);
+    return socket;
+  }
+
+  private static int drain(List<WebSocketImpl> sockets) {
+    int bytes = 0;
+    for (WebSocketImpl socket : sockets) {
+      ByteBuffer buffer;
+      while ((buffer = socket.outQueue.poll()) != null) {
+        bytes += buffer.remaining();
+      }
+    }
+    return bytes;
+  }
+
+  private static final class IdleServer extends WebSocketServer {
+    IdleServer() {
+      super(new InetSocketAddress(0));
+    }
+
+    @Override
+    public void onOpen(WebSocket conn, ClientHandshake handshake) {}
+
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {}
+
+    @Override
+    public void onMessage(WebSocket conn, String message) {}
+
+    @Override
+    public void onError(WebSocket conn, Exception ex) {}
+
+    @Override
+    public void onStart() {}
+  }
+
+  private static final class Listener extends WebSocketAdapter {
+    @Override
+    public void onWebsocketMessage(WebSocket conn, String message) {}
+
+    @Override
+    public void onWebsocketMessage(WebSocket conn, ByteBuffer blob) {}
+
+    @Override
+    public void onWebsocketOpen(WebSocket conn, Handshakedata handshake) {}
+
+    @Override
+    public void onWebsocketClose(WebSocket ws, int code, String reason, boolean remote) {}
+
+    @Override
+    public void onWebsocketClosing(WebSocket ws, int code, String reason, boolean remote) {}
+
+    @Override
+    public void onWebsocketCloseInitiated(WebSocket ws, int code, String reason) {}
+
+    @Override
+    public void onWebsocketError(WebSocket conn, Exception ex) {}
+
+    @Override
+    public void onWriteDemand(WebSocket conn) {}
+
+    @Override
+    public InetSocketAddress getLocalSocketAddress(WebSocket conn) {
+      return null;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteSocketAddress(WebSocket conn) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package com.uws.bridge.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CborBenchmark {
+  private static final String REQUEST_ID = "0521f4bb0a998000";
+  private static final String CONTROL =
+      "{\"cmd\":\"control\",\"requestId\":\"abc\",\"data\":{\"action\":\"kickPlayer\",\"params\":{\"player\":\"Steve\",\"reason\":\"bye\"}}}";
+
+  private ByteBuffer controlCbor;
+
+  @Setup
+  public void setUp() throws IOException {
+    controlCbor = encodeControl();
+  }
+
+  @Benchmark
+  public String encodeJson(Push state) {
+    return EnvelopeWriter.encodePush(state.push, REQUEST_ID, 42, state.payload);
+  }
+
+  @Benchmark
+  public ByteBuffer encodeCbor(Push state) {
+    return EnvelopeWriter.encodePushBinary(state.push, REQUEST_ID, 42, state.payload);
+  }
+
+  @Benchmark
+  public BridgeEnvelope decodeJson() {
+    return BridgeEnvelope.decode(CONTROL);
+  }
+
+  @Benchmark
+  public BridgeEnvelope decodeCbor() {
+    return BridgeEnvelope.decode(controlCbor.duplicate());
+  }
+
+  @State(Scope.Thread)
+  public static class Push {
+    @Param({"events.player", "metrics.tps"})
+    public String push;
+
+    PayloadWriter payload;
+
+    @Setup
+    public void setUp() {
+      payload = "metrics.tps".equals(push)
+          ? Payloads.metricsTick(19.98, 12.34, 17, 100)
+          : Payloads.playerEvent("ev-1", 1792241065461L, "join", "Steve", "069a79f4-44e9-4726-a5be-fca90e38aaf5", "10.0.0.5");
+    }
+  }
+
+  private static ByteBuffer encodeControl() throws IOException {
+    CborWriter writer = new CborWriter();
+    writer.jsonValue(CONTROL);
+    return writer.toByteBuffer();
+  }
+}
@@ -0,0 +1,64 @@
+package com.uws.bridge.common;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnvelopeDecodeBenchmark {
+  private static final Gson GSON = new Gson();
+  private static final String REQUEST_ID = "8f14e45f-ceea-467f-a2b9-0a0b2e0f4b11";
+
+  @Param({"ping", "getUsage", "control"})
+  public String cmd;
+
+  private String frame;
+
+  @Setup
+  public void setUp() {
+    switch (cmd) {
+      case "ping":
+        frame = "{\"cmd\":\"ping\",\"mode\":\"request\",\"requestId\":\"" + REQUEST_ID + "\",\"timestamp\":1792240300175,\"data\":{}}";
+        break;
+      case "getUsage":
+        frame = "{\"cmd\":\"getUsage\",\"mode\":\"request\",\"requestId\":\"" + REQUEST_ID + "\",\"timestamp\":1792240300175,\"data\":{\"detail\":true}}";
+        break;
+      default:
+        frame = "{\"cmd\":\"control\",\"mode\":\"request\",\"requestId\":\"" + REQUEST_ID
+            + "\",\"data\":{\"action\":\"kickPlayer\",\"params\":{\"player\":\"Steve\",\"reason\":\"bye\"}}}";
+    }
+  }
+
+  @Benchmark
+  public BridgeRequest gsonTree() {
+    JsonObject message = GSON.fromJson(frame, JsonObject.class);
+    String command = message.has("cmd") ? message.get("cmd").getAsString() : null;
+    String requestId = message.has("requestId") ? message.get("requestId").getAsString() : null;
+    String mode = message.has("mode") ? message.get("mode").getAsString() : "request";
+    JsonObject data = message.has("data") && message.get("data").isJsonObject() ? message.getAsJsonObject("data") : new JsonObject();
+    return new BridgeRequest(command, mode, requestId, data);
+  }
+
+  @Benchmark
+  public BridgeRequest streaming() {
+    BridgeEnvelope envelope = BridgeEnvelope.decode(frame);
+    return new BridgeRequest(envelope.getCmd(), envelope.getMode() != null ? envelope.getMode() : "request",
+        envelope.getRequestId(), envelope.getData());
+  }
+}
@@ -1,9 +1,48 @@
 package com.uws.bridge.common;
 
+import com.google.gson.JsonObject;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 public class BridgeConfig {
+  public static final int DEFAULT_MAX_BATCH = 64;
+  public static final int DEFAULT_RATE_QPS = 20;
+  public static final int DEFAULT_TIMEOUT_MS = 5000;
+  public static final int DEFAULT_MAX_IN_FLIGHT = 128;
+  public static final int DEFAULT_COMPRESSION_THRESHOLD = 256;
+  public static final int DEFAULT_HEARTBEAT_MISSES = 3;
+  public static final int DEFAULT_OUTBOUND_MAX_FRAMES = 1024;
+  public static final int DEFAULT_OUTBOUND_MAX_BYTES = 4 * 1024 * 1024;
+  public static final int DEFAULT_SLOW_CONSUMER_GRACE_MS = 10000;
+  public static final Set<String> DEFAULT_COALESCE_TOPICS = Set.of("metrics.tps", "metrics.dimensions", "heartbeat");
+  public static final Set<String> DEFAULT_LOSSY_TOPICS = Set.of("chat.ingame");
+  public static final int DEFAULT_REPLAY_CAPACITY = 512;
+  public static final int DEFAULT_REPLAY_RETENTION_MS = 300000;
+  public static final Set<String> DEFAULT_REPLAY_TOPICS = Set.of("players.activity", "chat.ingame");
+  public static final Set<String> DEFAULT_OUTBOX_TOPICS = Set.of("players.activity", "chat.ingame");
+  public static final int DEFAULT_OUTBOX_SEGMENT_BYTES = 4 * 1024 * 1024;
+  public static final int DEFAULT_OUTBOX_MAX_BYTES = 64 * 1024 * 1024;
+  public static final int DEFAULT_OUTBOX_MAX_AGE_MS = 7 * 24 * 60 * 60 * 1000;
+  public static final int DEFAULT_SNAPSHOT_MAX_STALE_MS = 2000;
+  public static final int DEFAULT_MAIN_THREAD_BUDGET_MS = 5;
+  public static final int DEFAULT_STRAINED_MSPT = 50;
+  public static final int DEFAULT_OVERLOADED_MSPT = 100;
+  public static final int DEFAULT_LAG_THRESHOLD_MS = 1000;
+  public static final int DEFAULT_LAG_SAMPLES = 5;
+  public static final int DEFAULT_LAG_STACK_DEPTH = 64;
+  public static final int DEFAULT_PROFILER_INTERVAL_MS = 10;
+  public static final int DEFAULT_PROFILER_MAX_MS = 300_000;
+  public static final int DEFAULT_PROFILER_CHUNK_BYTES = 65_536;
+  public static final int DEFAULT_CPU_SAMPLE_MS = 2000;
+  public static final int DEFAULT_CPU_TOP_THREADS = 5;
+
   private final String bindAddress;
   private final int port;
   private final String token;
@@ -12,6 +51,42 @@ public class BridgeConfig {
   private final String core;
   private final String version;
   private final Duration heartbeatInterval;
+  private int maxBatch = DEFAULT_MAX_BATCH;
+  private int rateQps = DEFAULT_RATE_QPS;
+  private int timeoutMs = DEFAULT_TIMEOUT_MS;
+  private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+  private int dispatchThreads;
+  private boolean compression = true;
+  private int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+  private int heartbeatMisses = DEFAULT_HEARTBEAT_MISSES;
+  private int outboundMaxFrames = DEFAULT_OUTBOUND_MAX_FRAMES;
+  private int outboundMaxBytes = DEFAULT_OUTBOUND_MAX_BYTES;
+  private int slowConsumerGraceMs = DEFAULT_SLOW_CONSUMER_GRACE_MS;
+  private Set<String> coalesceTopics = DEFAULT_COALESCE_TOPICS;
+  private Set<String> lossyTopics = DEFAULT_LOSSY_TOPICS;
+  private int nodeId = -1;
+  private int replayCapacity = DEFAULT_REPLAY_CAPACITY;
+  private int replayRetentionMs = DEFAULT_REPLAY_RETENTION_MS;
+  private Set<String> replayTopics = DEFAULT_REPLAY_TOPICS;
+  private Path dataDirectory;
+  private boolean outbox;
+  private Set<String> outboxTopics = DEFAULT_OUTBOX_TOPICS;
+  private int outboxSegmentBytes = DEFAULT_OUTBOX_SEGMENT_BYTES;
+  private int outboxMaxBytes = DEFAULT_OUTBOX_MAX_BYTES;
+  private int outboxMaxAgeMs = DEFAULT_OUTBOX_MAX_AGE_MS;
+  private int snapshotMaxStaleMs = DEFAULT_SNAPSHOT_MAX_STALE_MS;
+  private int mainThreadBudgetMs = DEFAULT_MAIN_THREAD_BUDGET_MS;
+  private boolean loadShedding = true;
+  private int strainedMspt = DEFAULT_STRAINED_MSPT;
+  private int overloadedMspt = DEFAULT_OVERLOADED_MSPT;
+  private int lagThresholdMs = DEFAULT_LAG_THRESHOLD_MS;
+  private int lagSamples = DEFAULT_LAG_SAMPLES;
+  private int lagStackDepth = DEFAULT_LAG_STACK_DEPTH;
+  private int profilerIntervalMs = DEFAULT_PROFILER_INTERVAL_MS;
+  private int profilerMaxMs = DEFAULT_PROFILER_MAX_MS;
+  private int profilerChunkBytes = DEFAULT_PROFILER_CHUNK_BYTES;
+  private int cpuSampleMs = DEFAULT_CPU_SAMPLE_MS;
+  private int cpuTopThreads = DEFAULT_CPU_TOP_THREADS;
 
   public BridgeConfig(
       String bindAddress,
@@ -63,4 +138,249 @@ public class BridgeConfig {
   public Duration getHeartbeatInterval() {
     return heartbeatInterval;
   }
+
+  public int getHeartbeatMisses() {
+    return heartbeatMisses;
+  }
+
+  public int getOutboundMaxFrames() {
+    return outboundMaxFrames;
+  }
+
+  public int getOutboundMaxBytes() {
+    return outboundMaxBytes;
+  }
+
+  public int getSlowConsumerGraceMs() {
+    return slowConsumerGraceMs;
+  }
+
+  public Set<String> getCoalesceTopics() {
+    return coalesceTopics;
+  }
+
+  public Set<String> getLossyTopics() {
+    return lossyTopics;
+  }
+
+  public int getNodeId() {
+    return nodeId >= 0 ? nodeId : BridgeIds.nodeFor(serverId);
+  }
+
+  public int getReplayCapacity() {
+    return replayCapacity;
+  }
+
+  public int getReplayRetentionMs() {
+    return replayRetentionMs;
+  }
+
+  public Set<String> getReplayTopics() {
+    return replayTopics;
+  }
+
+  public Path getDataDirectory() {
+    return dataDirectory;
+  }
+
+  public boolean isOutbox() {
+    return outbox && dataDirectory != null;
+  }
+
+  public Set<String> getOutboxTopics() {
+    return outboxTopics;
+  }
+
+  public int getOutboxSegmentBytes() {
+    return outboxSegmentBytes;
+  }
+
+  public int getOutboxMaxBytes() {
+    return outboxMaxBytes;
+  }
+
+  public int getOutboxMaxAgeMs() {
+    return outboxMaxAgeMs;
+  }
+
+  public int getSnapshotMaxStaleMs() {
+    return snapshotMaxStaleMs;
+  }
+
+  public int getMainThreadBudgetMs() {
+    return mainThreadBudgetMs;
+  }
+
+  public boolean isLoadShedding() {
+    return loadShedding;
+  }
+
+  public int getStrainedMspt() {
+    return strainedMspt;
+  }
+
+  public int getOverloadedMspt() {
+    return overloadedMspt;
+  }
+
+  public int getLagThresholdMs() {
+    return lagThresholdMs;
+  }
+
+  public int getLagSamples() {
+    return lagSamples;
+  }
+
+  public int getLagStackDepth() {
+    return lagStackDepth;
+  }
+
+  public int getProfilerIntervalMs() {
+    return profilerIntervalMs;
+  }
+
+  public int getProfilerMaxMs() {
+    return profilerMaxMs;
+  }
+
+  public int getProfilerChunkBytes() {
+    return profilerChunkBytes;
+  }
+
+  public int getCpuSampleMs() {
+    return cpuSampleMs;
+  }
+
+  public int getCpuTopThreads() {
+    return cpuTopThreads;
+  }
+
+  public int getMaxBatch() {
+    return maxBatch;
+  }
+
+  public int getRateQps() {
+    return rateQps;
+  }
+
+  public int getTimeoutMs() {
+    return timeoutMs;
+  }
+
+  public int getMaxInFlight() {
+    return maxInFlight;
+  }
+
+  public int getDispatchThreads() {
+    return dispatchThreads;
+  }
+
+  public boolean isCompression() {
+    return compression;
+  }
+
+  public int getCompressionThreshold() {
+    return compressionThreshold;
+  }
+
+  public JsonObject buildLimits() {
+    JsonObject limits = new JsonObject();
+    limits.addProperty("rate.qps", rateQps);
+    limits.addProperty("timeout.ms", timeoutMs);
+    limits.addProperty("maxBatch", maxBatch);
+    return limits;
+  }
+
+  public BridgeConfig withDataDirectory(Path dataDirectory) {
+    this.dataDirectory = dataDirectory;
+    return this;
+  }
+
+  public BridgeConfig applyOptions(Map<?, ?> options) {
+    if (options == null) {
+      return this;
+    }
+    maxBatch = Math.max(1, intOption(options, "maxBatch", maxBatch));
+    rateQps = Math.max(0, intOption(options, "rateQps", rateQps));
+    timeoutMs = Math.max(0, intOption(options, "timeoutMs", timeoutMs));
+    maxInFlight = Math.max(1, intOption(options, "maxInFlight", maxInFlight));
+    dispatchThreads = Math.max(0, intOption(options, "dispatchThreads", dispatchThreads));
+    compression = boolOption(options, "compression", compression);
+    compressionThreshold = Math.max(0, intOption(options, "compressionThreshold", compressionThreshold));
+    heartbeatMisses = Math.max(1, intOption(options, "heartbeatMisses", heartbeatMisses));
+    outboundMaxFrames = Math.max(0, intOption(options, "outboundMaxFrames", outboundMaxFrames));
+    outboundMaxBytes = Math.max(0, intOption(options, "outboundMaxBytes", outboundMaxBytes));
+    slowConsumerGraceMs = Math.max(0, intOption(options, "slowConsumerGraceMs", slowConsumerGraceMs));
+    coalesceTopics = setOption(options, "coalesceTopics", coalesceTopics);
+    lossyTopics = setOption(options, "lossyTopics", lossyTopics);
+    nodeId = Math.min(1023, intOption(options, "nodeId", nodeId));
+    replayCapacity = Math.max(0, intOption(options, "replayCapacity", replayCapacity));
+    replayRetentionMs = Math.max(0, intOption(options, "replayRetentionMs", replayRetentionMs));
+    replayTopics = setOption(options, "replayTopics", replayTopics);
+    outbox = boolOption(options, "outbox", outbox);
+    outboxTopics = setOption(options, "outboxTopics", outboxTopics);
+    outboxSegmentBytes = Math.max(4096, intOption(options, "outboxSegmentBytes", outboxSegmentBytes));
+    outboxMaxBytes = Math.max(0, intOption(options, "outboxMaxBytes", outboxMaxBytes));
+    outboxMaxAgeMs = Math.max(0, intOption(options, "outboxMaxAgeMs", outboxMaxAgeMs));
+    snapshotMaxStaleMs = Math.max(0, intOption(options, "snapshotMaxStaleMs", snapshotMaxStaleMs));
+    mainThreadBudgetMs = Math.max(0, intOption(options, "mainThreadBudgetMs", mainThreadBudgetMs));
+    loadShedding = boolOption(options, "loadShedding", loadShedding);
+    strainedMspt = Math.max(1, intOption(options, "strainedMspt", strainedMspt));
+    overloadedMspt = Math.max(strainedMspt, intOption(options, "overloadedMspt", overloadedMspt));
+    lagThresholdMs = Math.max(0, intOption(options, "lagThresholdMs", lagThresholdMs));
+    lagSamples = Math.max(1, intOption(options, "lagSamples", lagSamples));
+    lagStackDepth = Math.max(1, intOption(options, "lagStackDepth", lagStackDepth));
+    profilerIntervalMs = Math.max(1, intOption(options, "profilerIntervalMs", profilerIntervalMs));
+    profilerMaxMs = Math.max(0, intOption(options, "profilerMaxMs", profilerMaxMs));
+    profilerChunkBytes = Math.max(1024, intOption(options, "profilerChunkBytes", profilerChunkBytes));
+    cpuSampleMs = Math.max(0, intOption(options, "cpuSampleMs", cpuSampleMs));
+    cpuTopThreads = Math.max(0, intOption(options, "cpuTopThreads", cpuTopThreads));
+    return this;
+  }
+
+  private static int intOption(Map<?, ?> options, String key, int fallback) {
+    Object value = options.get(key);
+    if (value instanceof Number) {
+      return ((Number) value).intValue();
+    }
+    if (value == null) {
+      return fallback;
+    }
+    try {
+      return Integer.parseInt(value.toString().trim());
+    } catch (NumberFormatException ignored) {
+      return fallback;
+    }
+  }
+
+  private static Set<String> setOption(Map<?, ?> options, String key, Set<String> fallback) {
+    Object value = options.get(key);
+    if (value == null) {
+      return fallback;
+    }
+    Collection<?> items = value instanceof Collection ? (Collection<?>) value : Arrays.asList(value.toString().split(","));
+    Set<String> result = new HashSet<>();
+    for (Object item : items) {
+      String text = item != null ? item.toString().trim() : "";
+      if (!text.isEmpty()) {
+        result.add(text);
+      }
+    }
+    return Collections.unmodifiableSet(result);
+  }
+
+  private static boolean boolOption(Map<?, ?> options, String key, boolean fallback) {
+    Object value = options.get(key);
+    if (value instanceof Boolean) {
+      return (Boolean) value;
+    }
+    if (value == null) {
+      return fallback;
+    }
+    String text = value.toString().trim();
+    if (text.equalsIgnoreCase("true") || text.equalsIgnoreCase("false")) {
+      return Boolean.parseBoolean(text);
+    }
+    return fallback;
+  }
 }
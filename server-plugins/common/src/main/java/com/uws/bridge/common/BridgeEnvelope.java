@@ -0,0 +1,112 @@
+package com.uws.bridge.common;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.Set;
+
+public final class BridgeEnvelope {
+  private static final Set<String> DATALESS_COMMANDS = Set.of("ping", "getCapabilities", "getBacklog");
+
+  private String cmd;
+  private String mode;
+  private String requestId;
+  private JsonObject data;
+
+  private BridgeEnvelope() {}
+
+  public static BridgeEnvelope decode(String message) {
+    BridgeEnvelope envelope = new BridgeEnvelope();
+    try (JsonReader reader = new JsonReader(new StringReader(message))) {
+      reader.setLenient(true);
+      reader.beginObject();
+      while (reader.hasNext()) {
+        switch (reader.nextName()) {
+          case "cmd":
+            envelope.cmd = readString(reader);
+            break;
+          case "mode":
+            envelope.mode = readString(reader);
+            break;
+          case "requestId":
+            envelope.requestId = readString(reader);
+            break;
+          case "data":
+            envelope.data = readData(reader, envelope.cmd);
+            break;
+          default:
+            reader.skipValue();
+        }
+      }
+      reader.endObject();
+    } catch (IOException | IllegalStateException ex) {
+      throw new JsonParseException("malformed bridge envelope", ex);
+    }
+    return envelope;
+  }
+
+  public static BridgeEnvelope decode(ByteBuffer message) {
+    JsonElement element = CborReader.read(message);
+    if (!element.isJsonObject()) {
+      throw new JsonParseException("malformed bridge envelope");
+    }
+    JsonObject object = element.getAsJsonObject();
+    BridgeEnvelope envelope = new BridgeEnvelope();
+    envelope.cmd = stringMember(object, "cmd");
+    envelope.mode = stringMember(object, "mode");
+    envelope.requestId = stringMember(object, "requestId");
+    JsonElement data = object.get("data");
+    if (data != null && data.isJsonObject() && readsData(envelope.cmd)) {
+      envelope.data = data.getAsJsonObject();
+    }
+    return envelope;
+  }
+
+  public static boolean readsData(String cmd) {
+    return cmd == null || !DATALESS_COMMANDS.contains(cmd);
+  }
+
+  public String getCmd() {
+    return cmd;
+  }
+
+  public String getMode() {
+    return mode;
+  }
+
+  public String getRequestId() {
+    return requestId;
+  }
+
+  public JsonObject getData() {
+    return data;
+  }
+
+  private static String stringMember(JsonObject object, String name) {
+    JsonElement value = object.get(name);
+    return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+  }
+
+  private static String readString(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    return reader.nextString();
+  }
+
+  private static JsonObject readData(JsonReader reader, String cmd) throws IOException {
+    if (reader.peek() != JsonToken.BEGIN_OBJECT || !readsData(cmd)) {
+      reader.skipValue();
+      return null;
+    }
+    JsonElement element = JsonParser.parseReader(reader);
+    return element.getAsJsonObject();
+  }
+}
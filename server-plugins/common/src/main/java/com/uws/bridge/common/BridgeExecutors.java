@@ -0,0 +1,40 @@
+package com.uws.bridge.common;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class BridgeExecutors {
+  private BridgeExecutors() {}
+
+  public static ExecutorService newDispatcher(int threads) {
+    if (threads <= 0) {
+      ExecutorService virtual = newVirtualThreadExecutor();
+      if (virtual != null) {
+        return virtual;
+      }
+      threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+    }
+    return Executors.newFixedThreadPool(threads, daemonFactory("uwbp-dispatch"));
+  }
+
+  public static ThreadFactory daemonFactory(String prefix) {
+    AtomicInteger counter = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      return null;
+    }
+  }
+}
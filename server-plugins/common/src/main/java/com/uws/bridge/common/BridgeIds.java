@@ -0,0 +1,51 @@
+package com.uws.bridge.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class BridgeIds {
+  private static final long EPOCH = 1704067200000L;
+  private static final int COUNTER_BITS = 12;
+  private static final int NODE_BITS = 10;
+  private static final int TIME_SHIFT = COUNTER_BITS + NODE_BITS;
+  private static final long NODE_MASK = ((1L << NODE_BITS) - 1) << COUNTER_BITS;
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final long nodeBits;
+  private final AtomicLong last = new AtomicLong();
+
+  public BridgeIds(int node) {
+    this.nodeBits = ((long) node << COUNTER_BITS) & NODE_MASK;
+  }
+
+  public static int nodeFor(String name) {
+    int hash = name != null ? name.hashCode() : 0;
+    return (hash ^ (hash >>> NODE_BITS) ^ (hash >>> (2 * NODE_BITS))) & ((1 << NODE_BITS) - 1);
+  }
+
+  public long nextLong() {
+    long floor = ((System.currentTimeMillis() - EPOCH) << TIME_SHIFT) | nodeBits;
+    while (true) {
+      long previous = last.get();
+      long next = previous + 1;
+      if ((next & NODE_MASK) != nodeBits) {
+        next = (((previous >>> TIME_SHIFT) + 1) << TIME_SHIFT) | nodeBits;
+      }
+      if (next < floor) {
+        next = floor;
+      }
+      if (last.compareAndSet(previous, next)) {
+        return next;
+      }
+    }
+  }
+
+  public String next() {
+    long value = nextLong();
+    char[] chars = new char[16];
+    for (int i = 15; i >= 0; i--) {
+      chars[i] = HEX[(int) (value & 0xf)];
+      value >>>= 4;
+    }
+    return new String(chars);
+  }
+}
@@ -6,7 +6,7 @@ public class BridgeRequest {
   private final String cmd;
   private final String mode;
   private final String requestId;
-  private final JsonObject data;
+  private JsonObject data;
 
   public BridgeRequest(String cmd, String mode, String requestId, JsonObject data) {
     this.cmd = cmd;
@@ -28,6 +28,9 @@ public class BridgeRequest {
   }
 
   public JsonObject getData() {
+    if (data == null) {
+      data = new JsonObject();
+    }
     return data;
   }
 }
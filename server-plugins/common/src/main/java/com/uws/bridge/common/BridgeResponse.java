@@ -6,17 +6,31 @@ public class BridgeResponse {
   private final String status;
   private final String message;
   private final JsonObject data;
+  private final String encodedData;
 
   private BridgeResponse(String status, String message, JsonObject data) {
+    this(status, message, data, null);
+  }
+
+  private BridgeResponse(String status, String message, JsonObject data, String encodedData) {
     this.status = status;
     this.message = message;
     this.data = data;
+    this.encodedData = encodedData;
   }
 
   public static BridgeResponse success(JsonObject data) {
     return new BridgeResponse("success", null, data);
   }
 
+  public static BridgeResponse encoded(String json) {
+    return new BridgeResponse("success", null, null, json);
+  }
+
+  public static BridgeResponse encoded(PayloadWriter writer) {
+    return encoded(EnvelopeWriter.encodePayload(writer));
+  }
+
   public static BridgeResponse failure(String message) {
     return new BridgeResponse("fail", message, null);
   }
@@ -25,6 +39,23 @@ public class BridgeResponse {
     return new BridgeResponse("error", message, null);
   }
 
+  public static BridgeResponse rateLimited(long retryAfterMs) {
+    JsonObject data = new JsonObject();
+    data.addProperty("retryAfterMs", retryAfterMs);
+    return new BridgeResponse("rate_limited", "rate limit exceeded", data);
+  }
+
+  public static BridgeResponse busy(long retryAfterMs, double mspt) {
+    JsonObject data = new JsonObject();
+    data.addProperty("retryAfterMs", retryAfterMs);
+    data.addProperty("mspt", Math.round(mspt * 100.0) / 100.0);
+    return new BridgeResponse("server_busy", "server is lagging", data);
+  }
+
+  public static BridgeResponse timeout(String message) {
+    return new BridgeResponse("timeout", message, null);
+  }
+
   public String getStatus() {
     return status;
   }
@@ -36,4 +67,12 @@ public class BridgeResponse {
   public JsonObject getData() {
     return data;
   }
+
+  public String getEncodedData() {
+    return encodedData;
+  }
+
+  public PayloadWriter getPayload() {
+    return encodedData != null ? EnvelopeWriter.raw(encodedData) : EnvelopeWriter.tree(data);
+  }
 }
@@ -1,58 +1,324 @@
 package com.uws.bridge.common;
 
-import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.framing.Framedata;
 import org.java_websocket.handshake.ClientHandshake;
 import org.java_websocket.server.WebSocketServer;
 
 public class BridgeServer extends WebSocketServer {
-  private static final String SCHEMA = "uwbp/v2";
+  private static final int CLOSE_OVERLOADED = 4008;
+  private static final int CLOSE_SLOW_CONSUMER = 4009;
+  private static final String ENCODING_JSON = "json";
+  private static final String ENCODING_CBOR = "cbor";
+  private static final long RESUME_RETRY_MS = 20;
 
   private final BridgeConfig config;
   private final Logger logger;
   private final BridgeRequestHandler handler;
-  private final Gson gson = new Gson();
   private final Map<WebSocket, ClientContext> clients = new ConcurrentHashMap<>();
+  private final TopicRegistry topics;
+  private final SnapshotStore snapshots;
+  private final MainThreadQueue mainThreadQueue;
+  private final TickHealth health;
+  private final TickSampler tickSampler = new TickSampler();
+  private final LagWatchdog lagWatchdog;
+  private final SamplingProfiler profiler;
+  private final CpuSampler cpuSampler;
+  private final ExecutorService dispatcher;
+  private final boolean ownsDispatcher;
+  private final CountingDeflateExtension deflate;
+  private final Map<String, PushBatcher> batchers = new ConcurrentHashMap<>();
+  private final Map<String, ReplayRing> streams = new ConcurrentHashMap<>();
+  private final BridgeIds ids;
+  private final String streamEpoch;
+  private volatile ScheduledExecutorService scheduler;
+  private volatile EventOutbox outbox;
 
   private static class ClientContext {
-    boolean authorized;
+    final TokenBucket rateLimit;
+    final OutboundBudget outbound;
+    final Set<String> topics = ConcurrentHashMap.newKeySet();
+    final Map<String, PushBatcher.Spec> batching = new ConcurrentHashMap<>();
+    final Queue<Object> inbound = new ConcurrentLinkedQueue<>();
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicBoolean draining = new AtomicBoolean();
+    volatile boolean authorized;
+    volatile boolean binary;
+    volatile long lastSeen = System.currentTimeMillis();
+
+    ClientContext(BridgeConfig config) {
+      this.rateLimit = new TokenBucket(config.getRateQps(), config.getMaxBatch());
+      this.outbound = new OutboundBudget(
+          config.getOutboundMaxFrames(), config.getOutboundMaxBytes(), config.getSlowConsumerGraceMs());
+    }
   }
 
   public BridgeServer(BridgeConfig config, Logger logger, BridgeRequestHandler handler) {
-    super(new InetSocketAddress(config.getBindAddress(), config.getPort()));
+    this(config, logger, handler, null);
+  }
+
+  public BridgeServer(BridgeConfig config, Logger logger, BridgeRequestHandler handler, ExecutorService dispatcher) {
+    this(config, logger, handler, dispatcher,
+        config.isCompression() ? new CountingDeflateExtension(config.getCompressionThreshold()) : null);
+  }
+
+  private BridgeServer(
+      BridgeConfig config,
+      Logger logger,
+      BridgeRequestHandler handler,
+      ExecutorService dispatcher,
+      CountingDeflateExtension deflate) {
+    super(new InetSocketAddress(config.getBindAddress(), config.getPort()),
+        Collections.singletonList(deflate != null ? new Draft_6455(deflate) : new Draft_6455()));
+    this.deflate = deflate;
+    this.ids = new BridgeIds(config.getNodeId());
+    this.streamEpoch = ids.next();
+    setConnectionLostTimeout(0);
     this.config = config;
     this.logger = logger;
     this.handler = handler;
+    this.topics = new TopicRegistry(logger);
+    config.getReplayTopics().forEach(topic -> topics.bind(topic, null, () -> stream(topic).markIdle()));
+    this.snapshots = new SnapshotStore(config.getSnapshotMaxStaleMs());
+    this.mainThreadQueue = new MainThreadQueue(config.getMainThreadBudgetMs(), logger);
+    this.health = new TickHealth(config, logger);
+    this.lagWatchdog = new LagWatchdog(this, config, logger);
+    this.profiler = new SamplingProfiler(config, logger);
+    this.cpuSampler = new CpuSampler(config, logger);
+    this.ownsDispatcher = dispatcher == null;
+    this.dispatcher = dispatcher != null ? dispatcher : BridgeExecutors.newDispatcher(config.getDispatchThreads());
+  }
+
+  public BridgeConfig getConfig() {
+    return config;
+  }
+
+  public String nextId() {
+    return ids.next();
+  }
+
+  public boolean hasSubscribers(String topic) {
+    return topics.isActive(topic);
+  }
+
+  public TopicRegistry getTopics() {
+    return topics;
+  }
+
+  public SnapshotStore getSnapshots() {
+    return snapshots;
+  }
+
+  public MainThreadQueue getMainThreadQueue() {
+    return mainThreadQueue;
+  }
+
+  public TickHealth getHealth() {
+    return health;
+  }
+
+  public TickSampler getTickSampler() {
+    return tickSampler;
+  }
+
+  public LagWatchdog getLagWatchdog() {
+    return lagWatchdog;
+  }
+
+  public CpuSampler getCpuSampler() {
+    return cpuSampler;
+  }
+
+  public void tickStarted() {
+    tickSampler.tickStart();
+    lagWatchdog.tickStart();
+  }
+
+  public void tickEnded() {
+    tickSampler.tickEnd();
+    lagWatchdog.tickEnd();
+  }
+
+  public void recordTick(double tps, double mspt, int players, int maxPlayers) {
+    snapshots.sampleTick(tps, mspt, players, maxPlayers);
+    health.record(mspt);
+  }
+
+  public CompletableFuture<BridgeResponse> runOnMainThread(MainThreadQueue.Lane lane, Supplier<BridgeResponse> task) {
+    return runOn(lane, mainThreadQueue.executor(lane), task);
+  }
+
+  public CompletableFuture<BridgeResponse> runOn(MainThreadQueue.Lane lane, Executor executor, Supplier<BridgeResponse> task) {
+    if (!health.admits(lane)) {
+      return CompletableFuture.completedFuture(health.busy());
+    }
+    return MainThreadBatch.supply(executor, task);
+  }
+
+  public JsonObject buildTransportStats() {
+    JsonObject transport = new JsonObject();
+    transport.addProperty("clients", clients.size());
+    long dropped = 0;
+    long coalesced = 0;
+    for (ClientContext context : clients.values()) {
+      dropped += context.outbound.getDroppedFrames();
+      coalesced += context.outbound.getCoalescedFrames();
+    }
+    transport.addProperty("droppedFrames", dropped);
+    transport.addProperty("coalescedFrames", coalesced);
+    if (deflate != null) {
+      transport.add("compression", deflate.buildStats());
+    }
+    EventOutbox box = outbox;
+    if (box != null) {
+      transport.add("outbox", box.buildStats());
+    }
+    return transport;
+  }
+
+  @Override
+  public void stop(int timeout, String closeMessage) throws InterruptedException {
+    try {
+      super.stop(timeout, closeMessage);
+    } finally {
+      if (scheduler != null) {
+        batchers.values().forEach(PushBatcher::flush);
+        batchers.clear();
+        scheduler.shutdownNow();
+      }
+      if (outbox != null) {
+        config.getOutboxTopics().forEach(topics::release);
+        outbox.close();
+        outbox = null;
+      }
+      lagWatchdog.close();
+      profiler.close();
+      topics.clear();
+      if (ownsDispatcher) {
+        dispatcher.shutdownNow();
+      }
+    }
   }
 
   @Override
   public void onOpen(WebSocket conn, ClientHandshake handshake) {
-    clients.put(conn, new ClientContext());
+    clients.put(conn, new ClientContext(config));
     logger.info(() -> "Bridge client connected from " + conn.getRemoteSocketAddress());
   }
 
   @Override
   public void onClose(WebSocket conn, int code, String reason, boolean remote) {
-    clients.remove(conn);
+    ClientContext context = clients.remove(conn);
+    if (context != null) {
+      context.topics.forEach(this::releaseAfterRetention);
+      context.topics.clear();
+      pruneBatchers(Set.copyOf(context.batching.keySet()));
+    }
     logger.info(() -> "Bridge client disconnected: " + reason);
   }
 
+  private void releaseAfterRetention(String topic) {
+    ScheduledExecutorService timer = scheduler;
+    if (timer == null || config.getReplayRetentionMs() <= 0 || !config.getReplayTopics().contains(topic)) {
+      topics.release(topic);
+      return;
+    }
+    try {
+      timer.schedule(() -> topics.release(topic), config.getReplayRetentionMs(), TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException ex) {
+      topics.release(topic);
+    }
+  }
+
   @Override
   public void onMessage(WebSocket conn, String message) {
+    enqueue(conn, message);
+  }
+
+  @Override
+  public void onMessage(WebSocket conn, ByteBuffer message) {
+    enqueue(conn, message);
+  }
+
+  private void enqueue(WebSocket conn, Object message) {
+    ClientContext context = clients.get(conn);
+    if (context == null) {
+      return;
+    }
+    context.lastSeen = System.currentTimeMillis();
+    if (context.inFlight.incrementAndGet() > config.getMaxInFlight()) {
+      context.inFlight.decrementAndGet();
+      logger.warning(() -> "Closing bridge client " + conn.getRemoteSocketAddress() + ": too many in-flight requests");
+      conn.close(CLOSE_OVERLOADED, "too many in-flight requests");
+      return;
+    }
+    context.inbound.add(message);
+    scheduleDrain(conn, context);
+  }
+
+  private void scheduleDrain(WebSocket conn, ClientContext context) {
+    if (!context.draining.compareAndSet(false, true)) {
+      return;
+    }
     try {
-      JsonObject payload = gson.fromJson(message, JsonObject.class);
-      handleMessage(conn, payload);
-    } catch (Exception ex) {
-      logger.log(Level.WARNING, "Failed to parse bridge payload", ex);
+      dispatcher.execute(() -> drain(conn, context));
+    } catch (RejectedExecutionException ex) {
+      context.draining.set(false);
+    }
+  }
+
+  private void drain(WebSocket conn, ClientContext context) {
+    Object message;
+    while ((message = context.inbound.poll()) != null) {
+      CompletableFuture<Void> done;
+      try {
+        BridgeEnvelope envelope = message instanceof ByteBuffer
+            ? BridgeEnvelope.decode((ByteBuffer) message)
+            : BridgeEnvelope.decode((String) message);
+        done = handleMessage(conn, context, envelope);
+      } catch (Exception ex) {
+        logger.log(Level.WARNING, "Failed to parse bridge payload", ex);
+        done = CompletableFuture.completedFuture(null);
+      }
+      done.whenComplete((unused, error) -> context.inFlight.decrementAndGet());
+    }
+    context.draining.set(false);
+    if (!context.inbound.isEmpty()) {
+      scheduleDrain(conn, context);
     }
   }
 
@@ -64,29 +330,92 @@ public class BridgeServer extends WebSocketServer {
   @Override
   public void onStart() {
     logger.info(() -> "Bridge server listening on " + config.getBindAddress() + ":" + config.getPort());
+    scheduler = Executors.newSingleThreadScheduledExecutor(BridgeExecutors.daemonFactory("uwbp-scheduler"));
+    long interval = config.getHeartbeatInterval().toMillis();
+    if (interval > 0) {
+      scheduler.scheduleAtFixedRate(this::heartbeat, interval, interval, TimeUnit.MILLISECONDS);
+    }
+    lagWatchdog.start();
+    cpuSampler.start(scheduler);
+    if (config.isOutbox()) {
+      try {
+        outbox = new EventOutbox(config.getDataDirectory().resolve("outbox"), streamEpoch, config, logger);
+        config.getOutboxTopics().forEach(topics::acquire);
+      } catch (IOException ex) {
+        logger.log(Level.WARNING, "Failed to open bridge outbox", ex);
+      }
+    }
   }
 
-  private void handleMessage(WebSocket conn, JsonObject message) {
-    String cmd = message.has("cmd") ? message.get("cmd").getAsString() : null;
-    String requestId = message.has("requestId") ? message.get("requestId").getAsString() : UUID.randomUUID().toString();
-    if (cmd == null) {
-      return;
+  @Override
+  public void onWebsocketPong(WebSocket conn, Framedata frame) {
+    super.onWebsocketPong(conn, frame);
+    ClientContext context = clients.get(conn);
+    if (context != null) {
+      context.lastSeen = System.currentTimeMillis();
     }
+  }
 
-    ClientContext context = clients.get(conn);
-    if (context == null) {
-      return;
+  private void heartbeat() {
+    try {
+      long interval = config.getHeartbeatInterval().toMillis();
+      long deadline = System.currentTimeMillis() - interval * config.getHeartbeatMisses();
+      clients.forEach((conn, context) -> {
+        if (context.lastSeen < deadline) {
+          logger.warning(() -> "Evicting bridge client " + conn.getRemoteSocketAddress() + ": missed "
+              + config.getHeartbeatMisses() + " heartbeats");
+          conn.closeConnection(CloseFrame.ABNORMAL_CLOSE, "missed heartbeats");
+        } else if (conn.isOpen()) {
+          withinBudget(conn, context);
+          if (conn.isOpen()) {
+            conn.sendPing();
+          }
+        }
+      });
+      PayloadWriter load = snapshots.getPlayerLimit() >= 0
+          ? Payloads.metricsTick(Math.round(snapshots.getTps() * 100.0) / 100.0,
+              Math.round(snapshots.getMspt() * 100.0) / 100.0,
+              snapshots.getPlayerCount(), snapshots.getPlayerLimit(), tickSampler.windows())
+          : null;
+      int inFlight = clients.values().stream().mapToInt(context -> context.inFlight.get()).sum();
+      Runtime runtime = Runtime.getRuntime();
+      double memory = (runtime.totalMemory() - runtime.freeMemory()) * 100.0 / runtime.maxMemory();
+      push("heartbeat", stream("heartbeat").append("heartbeat", null), context -> true, "heartbeat", out -> {
+        out.beginObject();
+        out.name("intervalMs").value(interval);
+        out.name("clients").value(clients.size());
+        out.name("inFlight").value(inFlight);
+        out.name("memory").value(Math.round(memory * 100.0) / 100.0);
+        if (load != null) {
+          out.name("load");
+          load.write(out);
+        }
+        out.endObject();
+      });
+    } catch (RuntimeException ex) {
+      logger.log(Level.WARNING, "Bridge heartbeat failed", ex);
+    }
+  }
+
+  private CompletableFuture<Void> handleMessage(WebSocket conn, ClientContext context, BridgeEnvelope message) {
+    String cmd = message.getCmd();
+    String requestId = message.getRequestId() != null ? message.getRequestId() : ids.next();
+    if (cmd == null || !conn.isOpen()) {
+      return CompletableFuture.completedFuture(null);
     }
 
     if ("auth".equals(cmd)) {
-      String token = message.has("data") && message.getAsJsonObject("data").has("token")
-          ? message.getAsJsonObject("data").get("token").getAsString()
-          : null;
+      JsonObject auth = message.getData();
+      String token = auth != null && auth.has("token") ? auth.get("token").getAsString() : null;
       if (!config.getToken().equals(token)) {
         sendResponse(conn, requestId, cmd, "unauthorized", null, "invalid token");
         conn.close(4001, "unauthorized");
-        return;
+        return CompletableFuture.completedFuture(null);
       }
+      JsonElement requested = auth.get("encoding");
+      String encoding = requested != null && requested.isJsonPrimitive() && ENCODING_CBOR.equals(requested.getAsString())
+          ? ENCODING_CBOR
+          : ENCODING_JSON;
       context.authorized = true;
       JsonObject data = new JsonObject();
       data.addProperty("serverId", config.getServerId());
@@ -94,77 +423,681 @@ public class BridgeServer extends WebSocketServer {
       data.addProperty("core", config.getCore());
       data.addProperty("version", config.getVersion());
       data.addProperty("reportMode", "mixed");
-      sendResponse(conn, requestId, cmd, "success", data, null);
-      return;
+      data.addProperty("streamEpoch", streamEpoch);
+      data.addProperty("encoding", encoding);
+      if (ENCODING_CBOR.equals(encoding)) {
+        data.add("keys", CompactKeys.table());
+      }
+      sendResponse(conn, requestId, cmd, "success", EnvelopeWriter.tree(data), null);
+      context.binary = ENCODING_CBOR.equals(encoding);
+      return CompletableFuture.completedFuture(null);
     }
 
     if (!context.authorized) {
       sendResponse(conn, requestId, cmd, "unauthorized", null, "auth required");
-      return;
+      return CompletableFuture.completedFuture(null);
     }
 
+    if ("ping".equals(cmd)) {
+      long time = Instant.now().toEpochMilli();
+      sendResponse(conn, requestId, "pong", "success", out -> out.beginObject().name("time").value(time).endObject(), null);
+      return CompletableFuture.completedFuture(null);
+    }
+
+    if ("batch".equals(cmd)) {
+      return handleBatch(conn, context, requestId, message.getData() != null ? message.getData() : new JsonObject());
+    }
+
+    if (!context.rateLimit.tryAcquire(1)) {
+      sendRateLimited(conn, context, requestId, cmd, 1);
+      return CompletableFuture.completedFuture(null);
+    }
+
+    BridgeRequest request = new BridgeRequest(cmd, message.getMode() != null ? message.getMode() : "request", requestId, message.getData());
+    return dispatch(conn, context, request).thenAccept(response ->
+        sendResponse(conn, requestId, cmd, response));
+  }
+
+  private CompletableFuture<Void> handleBatch(WebSocket conn, ClientContext context, String requestId, JsonObject data) {
+    if (!data.has("requests") || !data.get("requests").isJsonArray()) {
+      sendResponse(conn, requestId, "batch", "fail", null, "missing requests");
+      return CompletableFuture.completedFuture(null);
+    }
+    JsonArray items = data.getAsJsonArray("requests");
+    if (items.size() > config.getMaxBatch()) {
+      sendResponse(conn, requestId, "batch", "fail", null, "batch exceeds maxBatch " + config.getMaxBatch());
+      return CompletableFuture.completedFuture(null);
+    }
+    if (!context.rateLimit.tryAcquire(items.size())) {
+      sendRateLimited(conn, context, requestId, "batch", items.size());
+      return CompletableFuture.completedFuture(null);
+    }
+
+    List<BridgeRequest> requests = new ArrayList<>(items.size());
+    List<CompletableFuture<BridgeResponse>> futures = new ArrayList<>(items.size());
+    try (MainThreadBatch ignored = MainThreadBatch.open()) {
+      for (int i = 0; i < items.size(); i++) {
+        JsonElement item = items.get(i);
+        String invalid = invalidBatchItem(item);
+        BridgeRequest request = invalid == null
+            ? toBatchItem(item, requestId + "#" + i)
+            : new BridgeRequest(null, "request", requestId + "#" + i, null);
+        requests.add(request);
+        futures.add(invalid == null
+            ? dispatchBatchItem(conn, context, request)
+            : CompletableFuture.completedFuture(BridgeResponse.failure(invalid)));
+      }
+    }
+
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).whenComplete((unused, error) ->
+        sendResponse(conn, requestId, "batch", "success", out -> {
+          out.beginObject();
+          out.name("count").value(requests.size());
+          out.name("results").beginArray();
+          for (int i = 0; i < requests.size(); i++) {
+            BridgeRequest request = requests.get(i);
+            BridgeResponse response = futures.get(i).join();
+            PayloadWriter payload = response.getPayload();
+            out.beginObject();
+            out.name("requestId").value(request.getRequestId());
+            out.name("cmd").value(request.getCmd());
+            out.name("status").value(response.getStatus());
+            if (payload != null) {
+              out.name("data");
+              payload.write(out);
+            }
+            if (response.getMessage() != null) {
+              out.name("msg").value(response.getMessage());
+            }
+            out.endObject();
+          }
+          out.endArray();
+          out.endObject();
+        }, null));
+  }
+
+  private static String invalidBatchItem(JsonElement element) {
+    if (element == null || !element.isJsonObject()) {
+      return null;
+    }
+    JsonObject item = element.getAsJsonObject();
+    if (item.has("cmd") && !item.get("cmd").isJsonPrimitive()) {
+      return "invalid cmd";
+    }
+    if (item.has("requestId") && !item.get("requestId").isJsonPrimitive()) {
+      return "invalid requestId";
+    }
+    return null;
+  }
+
+  private BridgeRequest toBatchItem(JsonElement element, String fallbackId) {
+    if (element == null || !element.isJsonObject()) {
+      return new BridgeRequest(null, "request", fallbackId, null);
+    }
+    JsonObject item = element.getAsJsonObject();
+    String cmd = item.has("cmd") ? item.get("cmd").getAsString() : null;
+    String requestId = item.has("requestId") ? item.get("requestId").getAsString() : fallbackId;
+    JsonObject data = item.has("data") && item.get("data").isJsonObject()
+        ? item.getAsJsonObject("data")
+        : null;
+    return new BridgeRequest(cmd, "request", requestId, data);
+  }
+
+  private CompletableFuture<BridgeResponse> dispatchBatchItem(WebSocket conn, ClientContext context, BridgeRequest request) {
+    String cmd = request.getCmd();
+    if (cmd == null) {
+      return CompletableFuture.completedFuture(BridgeResponse.failure("missing cmd"));
+    }
+    if ("auth".equals(cmd) || "batch".equals(cmd)) {
+      return CompletableFuture.completedFuture(BridgeResponse.failure("not allowed in batch"));
+    }
     if ("ping".equals(cmd)) {
       JsonObject data = new JsonObject();
       data.addProperty("time", Instant.now().toEpochMilli());
-      sendResponse(conn, requestId, "pong", "success", data, null);
-      return;
+      return CompletableFuture.completedFuture(BridgeResponse.success(data));
     }
+    try {
+      return dispatch(conn, context, request);
+    } catch (RuntimeException ex) {
+      logger.log(Level.WARNING, "Bridge batch item " + request.getRequestId() + " failed", ex);
+      return CompletableFuture.completedFuture(BridgeResponse.error(ex.getMessage()));
+    }
+  }
 
-    JsonObject data = message.has("data") && message.get("data").isJsonObject()
-        ? message.getAsJsonObject("data")
-        : new JsonObject();
-
-    BridgeRequest request = new BridgeRequest(cmd, message.has("mode") ? message.get("mode").getAsString() : "request", requestId, data);
+  private CompletableFuture<BridgeResponse> dispatch(WebSocket conn, ClientContext context, BridgeRequest request) {
+    if ("subscribe".equals(request.getCmd())) {
+      return handleSubscribe(conn, context, request.getData(), true);
+    }
+    if ("unsubscribe".equals(request.getCmd())) {
+      return handleSubscribe(conn, context, request.getData(), false);
+    }
+    if ("getBacklog".equals(request.getCmd())) {
+      return CompletableFuture.completedFuture(BridgeResponse.encoded(this::writeBacklog));
+    }
+    if ("diag.profiler.start".equals(request.getCmd())) {
+      return CompletableFuture.completedFuture(profiler.start(request.getData()));
+    }
+    if ("diag.profiler.stop".equals(request.getCmd())) {
+      return CompletableFuture.completedFuture(profiler.stop());
+    }
+    if ("diag.profiler.result".equals(request.getCmd())) {
+      return CompletableFuture.completedFuture(profiler.result(request.getData()));
+    }
+    CompletableFuture<BridgeResponse> future;
     try {
-      CompletableFuture<BridgeResponse> future = handler.handle(request);
-      future.whenComplete((response, error) -> {
-        if (error != null) {
-          logger.log(Level.WARNING, "Bridge request failed", error);
-          sendResponse(conn, requestId, cmd, "error", null, error.getMessage());
+      future = handler.handle(request);
+    } catch (Exception ex) {
+      logger.log(Level.SEVERE, "Bridge handler failure", ex);
+      return CompletableFuture.completedFuture(BridgeResponse.error(ex.getMessage()));
+    }
+    if (config.getTimeoutMs() > 0) {
+      future.completeOnTimeout(
+          BridgeResponse.timeout("request exceeded " + config.getTimeoutMs() + " ms"),
+          config.getTimeoutMs(),
+          TimeUnit.MILLISECONDS);
+    }
+    return future.handle((response, error) -> {
+      if (error != null) {
+        logger.log(Level.WARNING, "Bridge request failed", error);
+        Throwable cause = error.getCause() != null ? error.getCause() : error;
+        return BridgeResponse.error(cause.getMessage());
+      }
+      return response != null ? response : BridgeResponse.error(null);
+    });
+  }
+
+  private CompletableFuture<BridgeResponse> handleSubscribe(
+      WebSocket conn, ClientContext context, JsonObject payload, boolean subscribe) {
+    if (payload == null || !payload.has("topics") || !payload.get("topics").isJsonArray()) {
+      return CompletableFuture.completedFuture(BridgeResponse.failure("missing topics"));
+    }
+    Map<String, Resume> pending = new LinkedHashMap<>();
+    Set<String> changed = new HashSet<>();
+    synchronized (context) {
+      payload.getAsJsonArray("topics").forEach(element -> {
+        String topic = null;
+        PushBatcher.Spec batch = null;
+        long resumeFrom = -1;
+        if (element.isJsonObject() && element.getAsJsonObject().has("name")) {
+          JsonObject entry = element.getAsJsonObject();
+          topic = entry.get("name").getAsString();
+          batch = readBatchSpec(entry.get("batch"));
+          resumeFrom = entry.has("resumeFrom") ? entry.get("resumeFrom").getAsLong() : -1;
+        } else if (element.isJsonPrimitive()) {
+          topic = element.getAsString();
+        }
+        if (topic == null || topic.isEmpty()) {
           return;
         }
-        String status = response != null ? response.getStatus() : "error";
-        sendResponse(conn, requestId, cmd, status, response != null ? response.getData() : null, response != null ? response.getMessage() : null);
+        PushBatcher.Spec previous = subscribe && batch != null
+            ? context.batching.put(topic, batch)
+            : context.batching.remove(topic);
+        if (previous != null && !previous.equals(batch)) {
+          changed.add(topic);
+        }
+        if (subscribe) {
+          if (resumeFrom >= 0) {
+            pending.put(topic, new Resume(conn, context, topic, resumeFrom));
+          } else if (context.topics.add(topic)) {
+            topics.acquire(topic);
+          }
+        } else if (context.topics.remove(topic)) {
+          topics.release(topic);
+        }
       });
-    } catch (Exception ex) {
-      logger.log(Level.SEVERE, "Bridge handler failure", ex);
-      sendResponse(conn, requestId, cmd, "error", null, ex.getMessage());
     }
+    pruneBatchers(changed);
+    Map<String, CompletableFuture<JsonObject>> resumes = new LinkedHashMap<>();
+    pending.forEach((topic, resume) -> resumes.put(topic, resume.start()));
+    return CompletableFuture.allOf(resumes.values().toArray(new CompletableFuture[0])).thenApply(unused -> {
+      JsonObject data = new JsonObject();
+      JsonArray names = new JsonArray();
+      context.topics.forEach(names::add);
+      data.add("topics", names);
+      if (!context.batching.isEmpty()) {
+        JsonObject batched = new JsonObject();
+        context.batching.forEach((topic, spec) -> {
+          JsonObject entry = new JsonObject();
+          entry.addProperty("windowMs", spec.getWindowMs());
+          entry.addProperty("maxItems", spec.getMaxItems());
+          batched.add(topic, entry);
+        });
+        data.add("batch", batched);
+      }
+      if (!resumes.isEmpty()) {
+        JsonObject resumed = new JsonObject();
+        resumes.forEach((topic, result) -> resumed.add(topic, result.join()));
+        data.addProperty("streamEpoch", streamEpoch);
+        data.add("resume", resumed);
+      }
+      return BridgeResponse.success(data);
+    });
   }
 
-  private void sendResponse(WebSocket conn, String requestId, String cmd, String status, JsonObject data, String message) {
-    JsonObject response = new JsonObject();
-    response.addProperty("schema", SCHEMA);
-    response.addProperty("mode", "response");
-    response.addProperty("requestId", requestId);
-    response.addProperty("cmd", cmd);
-    response.addProperty("status", status);
-    response.addProperty("timestamp", Instant.now().toEpochMilli());
-    if (data != null) {
-      response.add("data", data);
+  private PushBatcher.Spec readBatchSpec(JsonElement batch) {
+    if (batch == null || batch.isJsonNull()) {
+      return null;
+    }
+    if (batch.isJsonPrimitive()) {
+      return batch.getAsBoolean() ? new PushBatcher.Spec(PushBatcher.DEFAULT_WINDOW_MS, PushBatcher.DEFAULT_MAX_ITEMS) : null;
     }
-    if (message != null) {
-      response.addProperty("msg", message);
+    if (!batch.isJsonObject()) {
+      return null;
+    }
+    JsonObject spec = batch.getAsJsonObject();
+    return new PushBatcher.Spec(
+        specOption(spec, "windowMs", PushBatcher.DEFAULT_WINDOW_MS),
+        specOption(spec, "maxItems", PushBatcher.DEFAULT_MAX_ITEMS));
+  }
+
+  private static int specOption(JsonObject spec, String key, int fallback) {
+    JsonElement value = spec.get(key);
+    return value != null && value.isJsonPrimitive() && value.getAsJsonPrimitive().isNumber() ? value.getAsInt() : fallback;
+  }
+
+  private void writeBacklog(JsonWriter out) throws IOException {
+    out.beginObject();
+    out.name("clients").beginArray();
+    for (Map.Entry<WebSocket, ClientContext> entry : clients.entrySet()) {
+      WebSocket conn = entry.getKey();
+      ClientContext context = entry.getValue();
+      context.outbound.check(conn);
+      out.beginObject();
+      out.name("remote").value(String.valueOf(conn.getRemoteSocketAddress()));
+      out.name("authorized").value(context.authorized);
+      out.name("encoding").value(context.binary ? ENCODING_CBOR : ENCODING_JSON);
+      out.name("inFlight").value(context.inFlight.get());
+      out.name("outbound");
+      context.outbound.writeStats(out);
+      out.endObject();
+    }
+    out.endArray();
+    out.endObject();
+  }
+
+  private void sendRateLimited(WebSocket conn, ClientContext context, String requestId, String cmd, int permits) {
+    BridgeResponse response = BridgeResponse.rateLimited(context.rateLimit.millisUntilAvailable(permits));
+    sendResponse(conn, requestId, cmd, response);
+  }
+
+  private void sendResponse(WebSocket conn, String requestId, String cmd, BridgeResponse response) {
+    sendResponse(conn, requestId, cmd, response.getStatus(), response.getPayload(), response.getMessage());
+  }
+
+  private void sendResponse(WebSocket conn, String requestId, String cmd, String status, PayloadWriter data, String message) {
+    if (!conn.isOpen()) {
+      return;
+    }
+    ClientContext context = clients.get(conn);
+    if (context != null && context.binary) {
+      conn.send(EnvelopeWriter.encodeResponseBinary(requestId, cmd, status, data, message));
+    } else {
+      conn.send(EnvelopeWriter.encodeResponse(requestId, cmd, status, data, message));
     }
-    conn.send(gson.toJson(response));
   }
 
   public void broadcast(String cmd, JsonObject data) {
-    JsonObject payload = new JsonObject();
-    payload.addProperty("schema", SCHEMA);
-    payload.addProperty("mode", "push");
-    payload.addProperty("cmd", cmd);
-    payload.addProperty("status", "success");
-    payload.addProperty("timestamp", Instant.now().toEpochMilli());
-    payload.addProperty("requestId", UUID.randomUUID().toString());
-    if (data != null) {
-      payload.add("data", data);
-    }
-    String serialized = gson.toJson(payload);
+    broadcast(cmd, cmd, data);
+  }
+
+  public void broadcast(String topic, String cmd, JsonObject data) {
+    broadcast(topic, cmd, EnvelopeWriter.tree(data));
+  }
+
+  public void broadcast(String topic, String cmd, PayloadWriter data) {
+    if (!topics.isActive(topic)) {
+      return;
+    }
+    if (config.getCoalesceTopics().contains(topic) && !health.admitPush(topic)) {
+      return;
+    }
+    ReplayRing stream = stream(topic);
+    synchronized (stream) {
+      long seq = stream.append(cmd, data);
+      push(topic, seq, context -> context.topics.contains(topic) && !context.batching.containsKey(topic), cmd, data);
+      addToBatches(topic, cmd, seq, data);
+      EventOutbox box = outbox;
+      if (box != null && config.getOutboxTopics().contains(topic) && !hasAuthorizedSubscriber(topic)) {
+        box.append(topic, cmd, seq, data);
+      }
+    }
+  }
+
+  private boolean hasAuthorizedSubscriber(String topic) {
+    for (ClientContext context : clients.values()) {
+      if (context.authorized && context.topics.contains(topic)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void addToBatches(String topic, String cmd, long seq, PayloadWriter data) {
+    ScheduledExecutorService timer = scheduler;
+    if (timer == null) {
+      return;
+    }
+    Set<PushBatcher.Spec> used = new HashSet<>();
+    for (ClientContext context : clients.values()) {
+      PushBatcher.Spec spec = context.batching.get(topic);
+      if (spec != null && context.authorized && context.topics.contains(topic)) {
+        used.add(spec);
+      }
+    }
+    for (PushBatcher.Spec spec : used) {
+      String key = topic + '|' + cmd + '|' + spec.getWindowMs() + '|' + spec.getMaxItems();
+      batchers.computeIfAbsent(key, unused -> new PushBatcher(topic, spec, timer, (batch, lastSeq) ->
+          push(topic, lastSeq, ctx -> ctx.topics.contains(topic) && spec.equals(ctx.batching.get(topic)), cmd, batch)))
+          .add(seq, data);
+    }
+  }
+
+  private void pruneBatchers(Set<String> changed) {
+    if (changed.isEmpty() || batchers.isEmpty()) {
+      return;
+    }
+    Map<String, Set<PushBatcher.Spec>> used = new HashMap<>();
+    for (ClientContext context : clients.values()) {
+      if (context.authorized) {
+        context.batching.forEach((topic, spec) -> used.computeIfAbsent(topic, unused -> new HashSet<>()).add(spec));
+      }
+    }
+    batchers.values().removeIf(batcher -> {
+      if (!changed.contains(batcher.getTopic())
+          || used.getOrDefault(batcher.getTopic(), Set.of()).contains(batcher.getSpec())) {
+        return false;
+      }
+      batcher.flush();
+      return true;
+    });
+  }
+
+  private ReplayRing stream(String topic) {
+    return streams.computeIfAbsent(topic, unused ->
+        new ReplayRing(config.getReplayTopics().contains(topic) || (config.isOutbox() && config.getOutboxTopics().contains(topic))
+            ? config.getReplayCapacity()
+            : 0));
+  }
+
+  private void push(String topic, long seq, Predicate<ClientContext> filter, String cmd, PayloadWriter data) {
+    List<WebSocket> textTargets = new ArrayList<>();
+    List<WebSocket> binaryTargets = new ArrayList<>();
+    List<WebSocket> deferred = new ArrayList<>();
     clients.forEach((socket, ctx) -> {
-      if (ctx.authorized && socket.isOpen()) {
-        socket.send(serialized);
+      if (!ctx.authorized || !socket.isOpen() || !filter.test(ctx)) {
+        return;
+      }
+      if (withinBudget(socket, ctx)) {
+        (ctx.binary ? binaryTargets : textTargets).add(socket);
+      } else if (socket.isOpen()) {
+        deferred.add(socket);
       }
     });
+    if (textTargets.isEmpty() && binaryTargets.isEmpty() && deferred.isEmpty()) {
+      return;
+    }
+    PushFrame frame = new PushFrame(cmd, ids.next(), seq, data);
+    if (!textTargets.isEmpty()) {
+      broadcast(frame.text(), textTargets);
+    }
+    if (!binaryTargets.isEmpty()) {
+      broadcast(frame.binary(), binaryTargets);
+    }
+    for (WebSocket socket : deferred) {
+      ClientContext ctx = clients.get(socket);
+      if (ctx == null) {
+        continue;
+      }
+      if (config.getCoalesceTopics().contains(topic)) {
+        ctx.outbound.coalesce(topic, ctx.binary ? frame.binary() : frame.text());
+      } else if (config.getLossyTopics().contains(topic)) {
+        ctx.outbound.drop();
+      } else if (ctx.binary) {
+        socket.send(frame.binary().duplicate());
+      } else {
+        socket.send(frame.text());
+      }
+    }
+  }
+
+  private boolean withinBudget(WebSocket conn, ClientContext context) {
+    switch (context.outbound.check(conn)) {
+      case WITHIN:
+        context.outbound.flush(conn);
+        return true;
+      case EXHAUSTED:
+        logger.warning(() -> "Closing bridge client " + conn.getRemoteSocketAddress() + ": outbound backlog over budget");
+        conn.close(CLOSE_SLOW_CONSUMER, "outbound backlog over budget");
+        return false;
+      default:
+        return false;
+    }
+  }
+
+  private final class Resume {
+    private final WebSocket conn;
+    private final ClientContext context;
+    private final String topic;
+    private final long resumeFrom;
+    private final ReplayRing stream;
+    private final EventOutbox box;
+    private final boolean acquired;
+    private final CompletableFuture<JsonObject> done = new CompletableFuture<>();
+    private boolean outboxDone;
+    private long delivered;
+    private long from = -1;
+    private long cursor;
+    private long missedFrom;
+    private long missedTo;
+    private boolean reset;
+    private int drained;
+    private int replayed;
+
+    Resume(WebSocket conn, ClientContext context, String topic, long resumeFrom) {
+      this.conn = conn;
+      this.context = context;
+      this.topic = topic;
+      this.resumeFrom = resumeFrom;
+      this.stream = stream(topic);
+      EventOutbox current = outbox;
+      this.box = current != null && config.getOutboxTopics().contains(topic) ? current : null;
+      this.outboxDone = box == null;
+      this.delivered = resumeFrom;
+      this.acquired = !context.topics.contains(topic);
+      if (acquired) {
+        topics.acquire(topic);
+      }
+    }
+
+    CompletableFuture<JsonObject> start() {
+      try {
+        dispatcher.execute(this::step);
+      } catch (RejectedExecutionException ex) {
+        abort();
+      }
+      return done;
+    }
+
+    private void step() {
+      try {
+        if (!conn.isOpen()) {
+          abort();
+          return;
+        }
+        if (!outboxDone) {
+          boolean[] blocked = {false};
+          drained += box.drain(topic, record -> {
+            if (deliver(record)) {
+              return true;
+            }
+            blocked[0] = true;
+            return false;
+          });
+          if (blocked[0]) {
+            retry();
+            return;
+          }
+          outboxDone = true;
+        }
+        while (true) {
+          List<ReplayRing.Entry> entries;
+          synchronized (stream) {
+            entries = backlog();
+          }
+          if (entries.isEmpty()) {
+            synchronized (context) {
+              synchronized (stream) {
+                if (backlog().isEmpty()) {
+                  subscribe();
+                  done.complete(result());
+                  return;
+                }
+              }
+            }
+            continue;
+          }
+          for (ReplayRing.Entry entry : entries) {
+            if (!conn.isOpen() || !withinBudget(conn, context)) {
+              retry();
+              return;
+            }
+            send(new PushFrame(entry.getCmd(), ids.next(), entry.getSeq(), entry.getData()));
+            cursor = entry.getSeq();
+            replayed++;
+          }
+        }
+      } catch (RuntimeException ex) {
+        logger.log(Level.WARNING, "Bridge resume of " + topic + " failed", ex);
+        abort();
+      }
+    }
+
+    private boolean deliver(EventOutbox.Record record) {
+      if (!conn.isOpen() || !withinBudget(conn, context)) {
+        return false;
+      }
+      boolean current = streamEpoch.equals(record.getEpoch());
+      if (current && record.getSeq() == delivered + 1) {
+        delivered++;
+      }
+      send(new PushFrame(record.getCmd(), ids.next(), current ? record.getSeq() : 0, EnvelopeWriter.raw(record.getData())));
+      return true;
+    }
+
+    private List<ReplayRing.Entry> backlog() {
+      long last = stream.getLastSeq();
+      if (from < 0) {
+        reset = resumeFrom > last;
+        from = reset ? last : Math.max(resumeFrom, Math.min(delivered, last));
+        cursor = from;
+      }
+      long oldest = stream.getOldestSeq();
+      if (!reset && oldest - cursor > 1) {
+        if (missedFrom == 0) {
+          missedFrom = cursor + 1;
+        }
+        missedTo = oldest - 1;
+      }
+      return stream.since(cursor);
+    }
+
+    private void subscribe() {
+      boolean added = context.topics.add(topic);
+      if (added && !acquired) {
+        topics.acquire(topic);
+      } else if (!added && acquired) {
+        topics.release(topic);
+      }
+      if (box != null) {
+        box.discard(topic);
+      }
+    }
+
+    private void send(PushFrame frame) {
+      if (context.binary) {
+        conn.send(frame.binary());
+      } else {
+        conn.send(frame.text());
+      }
+    }
+
+    private void retry() {
+      ScheduledExecutorService timer = scheduler;
+      if (timer == null) {
+        abort();
+        return;
+      }
+      try {
+        timer.schedule(() -> {
+          try {
+            dispatcher.execute(this::step);
+          } catch (RejectedExecutionException ex) {
+            abort();
+          }
+        }, RESUME_RETRY_MS, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException ex) {
+        abort();
+      }
+    }
+
+    private void abort() {
+      if (acquired) {
+        topics.release(topic);
+      }
+      done.complete(result());
+    }
+
+    private JsonObject result() {
+      long unrecorded = stream.getUnrecordedSeq();
+      boolean idled = !reset && from >= 0 && unrecorded > from;
+      JsonObject result = new JsonObject();
+      result.addProperty("lastSeq", stream.getLastSeq());
+      result.addProperty("replayed", replayed);
+      if (box != null) {
+        result.addProperty("outbox", drained);
+      }
+      result.addProperty("gap", reset || missedFrom > 0 || idled);
+      if (missedFrom > 0) {
+        result.addProperty("missedFrom", missedFrom);
+        result.addProperty("missedTo", missedTo);
+      }
+      if (idled) {
+        result.addProperty("unrecordedAfter", unrecorded - 1);
+      }
+      if (reset) {
+        result.addProperty("reset", true);
+      }
+      return result;
+    }
+  }
+
+  private static final class PushFrame {
+    private final String cmd;
+    private final String requestId;
+    private final long seq;
+    private final PayloadWriter data;
+    private String text;
+    private ByteBuffer binary;
+
+    PushFrame(String cmd, String requestId, long seq, PayloadWriter data) {
+      this.cmd = cmd;
+      this.requestId = requestId;
+      this.seq = seq;
+      this.data = data;
+    }
+
+    String text() {
+      if (text == null) {
+        text = EnvelopeWriter.encodePush(cmd, requestId, seq, data);
+      }
+      return text;
+    }
+
+    ByteBuffer binary() {
+      if (binary == null) {
+        binary = EnvelopeWriter.encodePushBinary(cmd, requestId, seq, data);
+      }
+      return binary;
+    }
   }
 }
@@ -0,0 +1,190 @@
+package com.uws.bridge.common;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+public final class CborReader {
+  private static final int MAX_DEPTH = 64;
+  private static final int BREAK = 0xff;
+
+  private final ByteBuffer input;
+
+  private CborReader(ByteBuffer input) {
+    this.input = input;
+  }
+
+  public static JsonElement read(ByteBuffer input) {
+    CborReader reader = new CborReader(input.slice());
+    try {
+      return reader.readValue(0);
+    } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex) {
+      throw new JsonParseException("malformed cbor payload", ex);
+    }
+  }
+
+  private JsonElement readValue(int depth) {
+    if (depth > MAX_DEPTH) {
+      throw new JsonParseException("cbor payload nested too deeply");
+    }
+    int initial = input.get() & 0xff;
+    int major = initial >>> 5;
+    int info = initial & 0x1f;
+    switch (major) {
+      case 0:
+        return new JsonPrimitive(readLength(info));
+      case 1:
+        return new JsonPrimitive(-1 - readLength(info));
+      case 2:
+        return new JsonPrimitive(Base64.getEncoder().encodeToString(readBytes(info)));
+      case 3:
+        return new JsonPrimitive(readText(info));
+      case 4:
+        return readArray(info, depth);
+      case 5:
+        return readMap(info, depth);
+      case 6:
+        readLength(info);
+        return readValue(depth + 1);
+      default:
+        return readSimple(info);
+    }
+  }
+
+  private JsonArray readArray(int info, int depth) {
+    JsonArray array = new JsonArray();
+    if (info == 31) {
+      while (!consumeBreak()) {
+        array.add(readValue(depth + 1));
+      }
+      return array;
+    }
+    long length = checkedLength(readLength(info));
+    for (long i = 0; i < length; i++) {
+      array.add(readValue(depth + 1));
+    }
+    return array;
+  }
+
+  private JsonObject readMap(int info, int depth) {
+    JsonObject object = new JsonObject();
+    if (info == 31) {
+      while (!consumeBreak()) {
+        readEntry(object, depth);
+      }
+      return object;
+    }
+    long length = checkedLength(readLength(info));
+    for (long i = 0; i < length; i++) {
+      readEntry(object, depth);
+    }
+    return object;
+  }
+
+  private void readEntry(JsonObject object, int depth) {
+    JsonElement key = readValue(depth + 1);
+    if (!key.isJsonPrimitive()) {
+      throw new JsonParseException("cbor map key must be a scalar");
+    }
+    String name = key.getAsJsonPrimitive().isNumber() ? CompactKeys.nameOf(key.getAsLong()) : null;
+    object.add(name != null ? name : key.getAsString(), readValue(depth + 1));
+  }
+
+  private JsonElement readSimple(int info) {
+    switch (info) {
+      case 20:
+        return new JsonPrimitive(false);
+      case 21:
+        return new JsonPrimitive(true);
+      case 22:
+      case 23:
+        return JsonNull.INSTANCE;
+      case 25:
+        return new JsonPrimitive(halfToFloat(input.getShort() & 0xffff));
+      case 26:
+        return new JsonPrimitive(input.getFloat());
+      case 27:
+        return new JsonPrimitive(input.getDouble());
+      default:
+        throw new JsonParseException("unsupported cbor simple value " + info);
+    }
+  }
+
+  private String readText(int info) {
+    if (info == 31) {
+      StringBuilder text = new StringBuilder();
+      while (!consumeBreak()) {
+        int chunk = input.get() & 0xff;
+        if (chunk >>> 5 != 3 || (chunk & 0x1f) == 31) {
+          throw new JsonParseException("invalid cbor text chunk");
+        }
+        text.append(readText(chunk & 0x1f));
+      }
+      return text.toString();
+    }
+    return new String(readBytes(info), StandardCharsets.UTF_8);
+  }
+
+  private byte[] readBytes(int info) {
+    if (info == 31) {
+      throw new JsonParseException("indefinite cbor byte strings are not supported");
+    }
+    byte[] bytes = new byte[(int) checkedLength(readLength(info))];
+    input.get(bytes);
+    return bytes;
+  }
+
+  private long readLength(int info) {
+    if (info < 24) {
+      return info;
+    }
+    switch (info) {
+      case 24:
+        return input.get() & 0xffL;
+      case 25:
+        return input.getShort() & 0xffffL;
+      case 26:
+        return input.getInt() & 0xffffffffL;
+      case 27:
+        return input.getLong();
+      default:
+        throw new JsonParseException("invalid cbor length " + info);
+    }
+  }
+
+  private long checkedLength(long length) {
+    if (length < 0 || length > input.remaining()) {
+      throw new JsonParseException("cbor length exceeds frame");
+    }
+    return length;
+  }
+
+  private boolean consumeBreak() {
+    if ((input.get(input.position()) & 0xff) == BREAK) {
+      input.get();
+      return true;
+    }
+    return false;
+  }
+
+  private static float halfToFloat(int half) {
+    int exponent = (half >>> 10) & 0x1f;
+    int mantissa = half & 0x3ff;
+    float value;
+    if (exponent == 0) {
+      value = mantissa * (float) Math.pow(2, -24);
+    } else if (exponent == 31) {
+      value = mantissa == 0 ? Float.POSITIVE_INFINITY : Float.NaN;
+    } else {
+      value = (mantissa + 1024) * (float) Math.pow(2, exponent - 25);
+    }
+    return (half & 0x8000) != 0 ? -value : value;
+  }
+}
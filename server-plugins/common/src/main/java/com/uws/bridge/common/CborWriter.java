@@ -0,0 +1,300 @@
+package com.uws.bridge.common;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class CborWriter extends JsonWriter {
+  private static final int MAJOR_UNSIGNED = 0;
+  private static final int MAJOR_NEGATIVE = 1;
+  private static final int MAJOR_TEXT = 3;
+  private static final int INDEFINITE_ARRAY = 0x9f;
+  private static final int INDEFINITE_MAP = 0xbf;
+  private static final int BREAK = 0xff;
+  private static final int FALSE = 0xf4;
+  private static final int TRUE = 0xf5;
+  private static final int NULL = 0xf6;
+  private static final int FLOAT32 = 0xfa;
+  private static final int FLOAT64 = 0xfb;
+
+  private byte[] buffer;
+  private int size;
+  private String deferredName;
+
+  public CborWriter() {
+    this(256);
+  }
+
+  public CborWriter(int initialCapacity) {
+    super(Writer.nullWriter());
+    this.buffer = new byte[Math.max(16, initialCapacity)];
+    setSerializeNulls(false);
+  }
+
+  public int capacity() {
+    return buffer.length;
+  }
+
+  public void reset() {
+    size = 0;
+    deferredName = null;
+  }
+
+  public ByteBuffer toByteBuffer() {
+    return ByteBuffer.wrap(Arrays.copyOf(buffer, size));
+  }
+
+  @Override
+  public JsonWriter beginArray() {
+    writeDeferredName();
+    write(INDEFINITE_ARRAY);
+    return this;
+  }
+
+  @Override
+  public JsonWriter endArray() {
+    write(BREAK);
+    return this;
+  }
+
+  @Override
+  public JsonWriter beginObject() {
+    writeDeferredName();
+    write(INDEFINITE_MAP);
+    return this;
+  }
+
+  @Override
+  public JsonWriter endObject() {
+    deferredName = null;
+    write(BREAK);
+    return this;
+  }
+
+  @Override
+  public JsonWriter name(String name) {
+    if (name == null) {
+      throw new NullPointerException("name == null");
+    }
+    if (deferredName != null) {
+      throw new IllegalStateException("name already set: " + deferredName);
+    }
+    deferredName = name;
+    return this;
+  }
+
+  @Override
+  public JsonWriter value(String value) {
+    if (value == null) {
+      return nullValue();
+    }
+    writeDeferredName();
+    writeText(value);
+    return this;
+  }
+
+  @Override
+  public JsonWriter jsonValue(String value) throws IOException {
+    if (value == null) {
+      return nullValue();
+    }
+    try (JsonReader reader = new JsonReader(new StringReader(value))) {
+      reader.setLenient(true);
+      copy(reader);
+    }
+    return this;
+  }
+
+  @Override
+  public JsonWriter nullValue() {
+    if (deferredName != null && !getSerializeNulls()) {
+      deferredName = null;
+      return this;
+    }
+    writeDeferredName();
+    write(NULL);
+    return this;
+  }
+
+  @Override
+  public JsonWriter value(boolean value) {
+    writeDeferredName();
+    write(value ? TRUE : FALSE);
+    return this;
+  }
+
+  @Override
+  public JsonWriter value(Boolean value) {
+    return value == null ? nullValue() : value(value.booleanValue());
+  }
+
+  @Override
+  public JsonWriter value(float value) {
+    return value((double) value);
+  }
+
+  @Override
+  public JsonWriter value(double value) {
+    writeDeferredName();
+    long integral = (long) value;
+    if (integral == value && !(value == 0 && 1 / value < 0)) {
+      writeInteger(integral);
+    } else if ((double) (float) value == value || Double.isNaN(value)) {
+      write(FLOAT32);
+      writeInt(Float.floatToIntBits((float) value));
+    } else {
+      write(FLOAT64);
+      writeLong(Double.doubleToLongBits(value));
+    }
+    return this;
+  }
+
+  @Override
+  public JsonWriter value(long value) {
+    writeDeferredName();
+    writeInteger(value);
+    return this;
+  }
+
+  @Override
+  public JsonWriter value(Number value) {
+    if (value == null) {
+      return nullValue();
+    }
+    if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      return value(value.longValue());
+    }
+    if (value instanceof Double || value instanceof Float) {
+      return value(value.doubleValue());
+    }
+    BigDecimal decimal = new BigDecimal(value.toString());
+    try {
+      return value(decimal.longValueExact());
+    } catch (ArithmeticException ignored) {
+      return value(decimal.doubleValue());
+    }
+  }
+
+  @Override
+  public void flush() {}
+
+  @Override
+  public void close() {}
+
+  private void copy(JsonReader reader) throws IOException {
+    switch (reader.peek()) {
+      case BEGIN_ARRAY:
+        reader.beginArray();
+        beginArray();
+        while (reader.hasNext()) {
+          copy(reader);
+        }
+        reader.endArray();
+        endArray();
+        break;
+      case BEGIN_OBJECT:
+        reader.beginObject();
+        beginObject();
+        while (reader.hasNext()) {
+          name(reader.nextName());
+          copy(reader);
+        }
+        reader.endObject();
+        endObject();
+        break;
+      case STRING:
+        value(reader.nextString());
+        break;
+      case NUMBER:
+        value(new BigDecimal(reader.nextString()));
+        break;
+      case BOOLEAN:
+        value(reader.nextBoolean());
+        break;
+      case NULL:
+        reader.nextNull();
+        nullValue();
+        break;
+      default:
+        reader.skipValue();
+    }
+  }
+
+  private void writeDeferredName() {
+    if (deferredName != null) {
+      int id = CompactKeys.idOf(deferredName);
+      if (id >= 0) {
+        writeHead(MAJOR_UNSIGNED, id);
+      } else {
+        writeText(deferredName);
+      }
+      deferredName = null;
+    }
+  }
+
+  private void writeText(String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeHead(MAJOR_TEXT, bytes.length);
+    ensure(bytes.length);
+    System.arraycopy(bytes, 0, buffer, size, bytes.length);
+    size += bytes.length;
+  }
+
+  private void writeInteger(long value) {
+    if (value >= 0) {
+      writeHead(MAJOR_UNSIGNED, value);
+    } else {
+      writeHead(MAJOR_NEGATIVE, -1 - value);
+    }
+  }
+
+  private void writeHead(int major, long value) {
+    int type = major << 5;
+    if (value < 24) {
+      write(type | (int) value);
+    } else if (value <= 0xffL) {
+      write(type | 24);
+      write((int) value);
+    } else if (value <= 0xffffL) {
+      write(type | 25);
+      write((int) (value >>> 8));
+      write((int) value);
+    } else if (value <= 0xffffffffL) {
+      write(type | 26);
+      writeInt((int) value);
+    } else {
+      write(type | 27);
+      writeLong(value);
+    }
+  }
+
+  private void writeInt(int value) {
+    ensure(4);
+    buffer[size++] = (byte) (value >>> 24);
+    buffer[size++] = (byte) (value >>> 16);
+    buffer[size++] = (byte) (value >>> 8);
+    buffer[size++] = (byte) value;
+  }
+
+  private void writeLong(long value) {
+    writeInt((int) (value >>> 32));
+    writeInt((int) value);
+  }
+
+  private void write(int value) {
+    ensure(1);
+    buffer[size++] = (byte) value;
+  }
+
+  private void ensure(int extra) {
+    if (size + extra > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+    }
+  }
+}
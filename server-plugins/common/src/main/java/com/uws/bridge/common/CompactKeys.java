@@ -0,0 +1,39 @@
+package com.uws.bridge.common;
+
+import com.google.gson.JsonObject;
+import java.util.HashMap;
+import java.util.Map;
+
+public final class CompactKeys {
+  private static final String[] NAMES = {
+    "schema", "mode", "requestId", "cmd", "status", "timestamp", "data", "msg",
+    "tps", "mspt", "players", "maxPlayers", "count", "eventId", "type", "player",
+    "name", "uuid", "message", "time", "items", "seq", "firstSeq"
+  };
+  private static final Map<String, Integer> IDS = new HashMap<>();
+
+  static {
+    for (int i = 0; i < NAMES.length; i++) {
+      IDS.put(NAMES[i], i);
+    }
+  }
+
+  private CompactKeys() {}
+
+  public static int idOf(String key) {
+    Integer id = IDS.get(key);
+    return id != null ? id : -1;
+  }
+
+  public static String nameOf(long id) {
+    return id >= 0 && id < NAMES.length ? NAMES[(int) id] : null;
+  }
+
+  public static JsonObject table() {
+    JsonObject table = new JsonObject();
+    for (int i = 0; i < NAMES.length; i++) {
+      table.addProperty(NAMES[i], i);
+    }
+    return table;
+  }
+}
@@ -0,0 +1,72 @@
+package com.uws.bridge.common;
+
+import com.google.gson.JsonObject;
+import java.util.concurrent.atomic.LongAdder;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
+import org.java_websocket.framing.DataFrame;
+import org.java_websocket.framing.Framedata;
+
+public class CountingDeflateExtension extends PerMessageDeflateExtension {
+  private final Counters counters;
+
+  public CountingDeflateExtension(int threshold) {
+    this(threshold, new Counters());
+  }
+
+  private CountingDeflateExtension(int threshold, Counters counters) {
+    this.counters = counters;
+    setThreshold(threshold);
+    setServerNoContextTakeover(true);
+  }
+
+  @Override
+  public synchronized void encodeFrame(Framedata frame) {
+    if (!(frame instanceof DataFrame)) {
+      super.encodeFrame(frame);
+      return;
+    }
+    if (frame.isRSV1()) {
+      // Frames shared by a broadcast are already compressed without context takeover.
+      counters.framesShared.increment();
+      return;
+    }
+    int before = frame.getPayloadData().remaining();
+    if (before < getThreshold()) {
+      counters.framesBelowThreshold.increment();
+      super.encodeFrame(frame);
+      return;
+    }
+    super.encodeFrame(frame);
+    counters.framesCompressed.increment();
+    counters.bytesIn.add(before);
+    counters.bytesOut.add(frame.getPayloadData().remaining());
+  }
+
+  @Override
+  public IExtension copyInstance() {
+    return new CountingDeflateExtension(getThreshold(), counters);
+  }
+
+  public JsonObject buildStats() {
+    long in = counters.bytesIn.sum();
+    long out = counters.bytesOut.sum();
+    JsonObject stats = new JsonObject();
+    stats.addProperty("threshold", getThreshold());
+    stats.addProperty("framesCompressed", counters.framesCompressed.sum());
+    stats.addProperty("framesShared", counters.framesShared.sum());
+    stats.addProperty("framesBelowThreshold", counters.framesBelowThreshold.sum());
+    stats.addProperty("bytesIn", in);
+    stats.addProperty("bytesOut", out);
+    stats.addProperty("ratio", in > 0 ? Math.round(out * 10000.0 / in) / 10000.0 : 1.0);
+    return stats;
+  }
+
+  private static final class Counters {
+    final LongAdder framesCompressed = new LongAdder();
+    final LongAdder framesShared = new LongAdder();
+    final LongAdder framesBelowThreshold = new LongAdder();
+    final LongAdder bytesIn = new LongAdder();
+    final LongAdder bytesOut = new LongAdder();
+  }
+}
@@ -0,0 +1,153 @@
+package com.uws.bridge.common;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public final class CpuSampler {
+  private final Logger logger;
+  private final long intervalMs;
+  private final int topThreads;
+  private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+  private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+  private final int cores = Runtime.getRuntime().availableProcessors();
+  private Map<Long, Long> lastThreadTimes = new HashMap<>();
+  private long lastProcessTime = -1;
+  private long lastSampleAt;
+  private volatile Snapshot snapshot = new Snapshot(-1, -1, new JsonArray());
+
+  CpuSampler(BridgeConfig config, Logger logger) {
+    this.logger = logger;
+    this.intervalMs = config.getCpuSampleMs();
+    this.topThreads = Math.max(0, config.getCpuTopThreads());
+  }
+
+  public double getProcessLoad() {
+    return snapshot.process;
+  }
+
+  public double getSystemLoad() {
+    return snapshot.system;
+  }
+
+  public JsonArray buildTopThreads() {
+    return snapshot.top.deepCopy();
+  }
+
+  void start(ScheduledExecutorService scheduler) {
+    if (intervalMs > 0) {
+      scheduler.scheduleAtFixedRate(this::sample, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void sample() {
+    try {
+      long now = System.nanoTime();
+      long elapsed = now - lastSampleAt;
+      double process = -1;
+      double system = -1;
+      if (os instanceof com.sun.management.OperatingSystemMXBean) {
+        com.sun.management.OperatingSystemMXBean extended = (com.sun.management.OperatingSystemMXBean) os;
+        long processTime = extended.getProcessCpuTime();
+        if (lastProcessTime >= 0 && processTime >= 0) {
+          process = Math.min(100.0, percent(processTime - lastProcessTime, elapsed * cores));
+        }
+        lastProcessTime = processTime;
+        double load = extended.getCpuLoad();
+        system = load >= 0 ? Math.round(load * 10000.0) / 100.0 : -1;
+      }
+      JsonArray top = topThreads > 0 && threads.isThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled()
+          ? sampleThreads(lastSampleAt != 0 ? elapsed : 0)
+          : new JsonArray();
+      lastSampleAt = now;
+      snapshot = new Snapshot(process, system, top);
+    } catch (RuntimeException ex) {
+      logger.log(Level.WARNING, "Bridge CPU sampling failed", ex);
+    }
+  }
+
+  private JsonArray sampleThreads(long elapsed) {
+    long[] ids = threads.getAllThreadIds();
+    long[] times = cpuTimes(ids);
+    Map<Long, Long> current = new HashMap<>(ids.length * 2);
+    long[] topIds = new long[topThreads];
+    long[] topDeltas = new long[topThreads];
+    int count = 0;
+    for (int i = 0; i < ids.length; i++) {
+      if (times[i] < 0) {
+        continue;
+      }
+      current.put(ids[i], times[i]);
+      Long previous = lastThreadTimes.get(ids[i]);
+      long delta = previous != null ? times[i] - previous : 0;
+      if (elapsed <= 0 || delta <= 0 || (count == topThreads && delta <= topDeltas[count - 1])) {
+        continue;
+      }
+      int slot = count < topThreads ? count++ : count - 1;
+      while (slot > 0 && topDeltas[slot - 1] < delta) {
+        topIds[slot] = topIds[slot - 1];
+        topDeltas[slot] = topDeltas[slot - 1];
+        slot--;
+      }
+      topIds[slot] = ids[i];
+      topDeltas[slot] = delta;
+    }
+    lastThreadTimes = current;
+    JsonArray top = new JsonArray();
+    if (count == 0) {
+      return top;
+    }
+    long[] selected = new long[count];
+    System.arraycopy(topIds, 0, selected, 0, count);
+    ThreadInfo[] infos = threads.getThreadInfo(selected, 0);
+    for (int i = 0; i < count; i++) {
+      ThreadInfo info = infos[i];
+      if (info == null) {
+        continue;
+      }
+      JsonObject entry = new JsonObject();
+      entry.addProperty("id", info.getThreadId());
+      entry.addProperty("name", info.getThreadName());
+      entry.addProperty("state", info.getThreadState().name());
+      entry.addProperty("cpu", percent(topDeltas[i], elapsed));
+      top.add(entry);
+    }
+    return top;
+  }
+
+  private long[] cpuTimes(long[] ids) {
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads).getThreadCpuTime(ids);
+    }
+    long[] times = new long[ids.length];
+    for (int i = 0; i < ids.length; i++) {
+      times[i] = threads.getThreadCpuTime(ids[i]);
+    }
+    return times;
+  }
+
+  private static double percent(long cpuNanos, long wallNanos) {
+    return wallNanos > 0 ? Math.round(cpuNanos * 10000.0 / wallNanos) / 100.0 : -1;
+  }
+
+  private static final class Snapshot {
+    private final double process;
+    private final double system;
+    private final JsonArray top;
+
+    Snapshot(double process, double system, JsonArray top) {
+      this.process = process;
+      this.system = system;
+      this.top = top;
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package com.uws.bridge.common;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+public final class DimensionStats {
+  private final Map<Object, Dimension> dimensions = new ConcurrentHashMap<>();
+
+  public <K> Dimension dimension(K key, Function<? super K, String> name) {
+    Dimension dimension = dimensions.get(key);
+    return dimension != null ? dimension : dimensions.computeIfAbsent(key, unused -> new Dimension(name.apply(key)));
+  }
+
+  public Dimension find(Object key) {
+    return dimensions.get(key);
+  }
+
+  public void remove(Object key) {
+    dimensions.remove(key);
+  }
+
+  public PayloadWriter payload() {
+    Dimension[] snapshot = dimensions.values().toArray(new Dimension[0]);
+    PayloadWriter[] ticks = new PayloadWriter[snapshot.length];
+    for (int i = 0; i < snapshot.length; i++) {
+      ticks[i] = snapshot[i].ticks.windows();
+    }
+    return out -> {
+      out.beginObject();
+      out.name("dimensions").beginArray();
+      for (int i = 0; i < snapshot.length; i++) {
+        Dimension dimension = snapshot[i];
+        out.beginObject();
+        out.name("id").value(dimension.id);
+        out.name("tickTimes");
+        ticks[i].write(out);
+        out.name("chunks").value(dimension.chunks);
+        out.name("entities").value(dimension.entities);
+        out.name("blockEntities").value(dimension.blockEntities);
+        out.endObject();
+      }
+      out.endArray();
+      out.endObject();
+    };
+  }
+
+  public JsonArray buildStats() {
+    JsonArray result = new JsonArray();
+    for (Dimension dimension : dimensions.values()) {
+      JsonObject entry = new JsonObject();
+      entry.addProperty("id", dimension.id);
+      entry.add("tickTimes", dimension.ticks.buildStats());
+      entry.addProperty("chunks", dimension.chunks);
+      entry.addProperty("entities", dimension.entities);
+      entry.addProperty("blockEntities", dimension.blockEntities);
+      result.add(entry);
+    }
+    return result;
+  }
+
+  public static final class Dimension {
+    private final String id;
+    private final TickSampler ticks = new TickSampler();
+    private final Map<Object, Integer> chunkBlockEntities = new IdentityHashMap<>();
+    private final Queue<Object> recount = new ArrayDeque<>();
+    private volatile int chunks;
+    private volatile int entities;
+    private volatile int blockEntities;
+
+    private Dimension(String id) {
+      this.id = id;
+    }
+
+    public void tickStart() {
+      ticks.tickStart();
+    }
+
+    public void tickEnd() {
+      ticks.tickEnd();
+    }
+
+    public void setChunks(int chunks) {
+      this.chunks = chunks;
+    }
+
+    public synchronized void entityAdded() {
+      entities++;
+    }
+
+    public synchronized void entityRemoved() {
+      entities = Math.max(0, entities - 1);
+    }
+
+    public synchronized void chunkLoaded(Object chunk, int count) {
+      Integer previous = chunkBlockEntities.put(chunk, count);
+      if (previous == null) {
+        recount.add(chunk);
+      }
+      blockEntities += count - (previous != null ? previous : 0);
+    }
+
+    public synchronized void chunkUnloaded(Object chunk) {
+      Integer previous = chunkBlockEntities.remove(chunk);
+      if (previous != null) {
+        blockEntities -= previous;
+      }
+    }
+
+    public synchronized <T> void recount(Class<T> type, ToIntFunction<T> counter, int budget) {
+      for (int i = 0; i < budget && !recount.isEmpty(); i++) {
+        Object chunk = recount.poll();
+        Integer previous = chunkBlockEntities.get(chunk);
+        if (previous == null) {
+          continue;
+        }
+        int count = counter.applyAsInt(type.cast(chunk));
+        chunkBlockEntities.put(chunk, count);
+        blockEntities += count - previous;
+        recount.add(chunk);
+      }
+    }
+  }
+}
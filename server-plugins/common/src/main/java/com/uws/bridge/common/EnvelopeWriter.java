@@ -0,0 +1,163 @@
+package com.uws.bridge.common;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public final class EnvelopeWriter {
+  public static final String SCHEMA = "uwbp/v2";
+
+  private static final Gson GSON = new Gson();
+  private static final int POOL_SIZE = 16;
+  private static final int MAX_RETAINED_CHARS = 1 << 20;
+  private static final Queue<StringBuilder> BUFFERS = new ConcurrentLinkedQueue<>();
+  private static final Queue<CborWriter> BINARY_WRITERS = new ConcurrentLinkedQueue<>();
+
+  private EnvelopeWriter() {}
+
+  public static String encodePayload(PayloadWriter payload) {
+    return encode(payload);
+  }
+
+  public static String encodeResponse(String requestId, String cmd, String status, PayloadWriter data, String message) {
+    return encode(response(requestId, cmd, status, data, message));
+  }
+
+  public static ByteBuffer encodeResponseBinary(String requestId, String cmd, String status, PayloadWriter data, String message) {
+    return encodeBinary(response(requestId, cmd, status, data, message));
+  }
+
+  public static String encodePush(String cmd, String requestId, long seq, PayloadWriter data) {
+    return encode(push(cmd, requestId, seq, data));
+  }
+
+  public static ByteBuffer encodePushBinary(String cmd, String requestId, long seq, PayloadWriter data) {
+    return encodeBinary(push(cmd, requestId, seq, data));
+  }
+
+  public static PayloadWriter tree(JsonElement element) {
+    return element == null ? null : out -> GSON.toJson(element, out);
+  }
+
+  public static PayloadWriter raw(String json) {
+    return json == null ? null : out -> out.jsonValue(json);
+  }
+
+  private static PayloadWriter response(String requestId, String cmd, String status, PayloadWriter data, String message) {
+    return out -> {
+      out.beginObject();
+      out.name("schema").value(SCHEMA);
+      out.name("mode").value("response");
+      out.name("requestId").value(requestId);
+      out.name("cmd").value(cmd);
+      out.name("status").value(status);
+      out.name("timestamp").value(System.currentTimeMillis());
+      if (data != null) {
+        out.name("data");
+        data.write(out);
+      }
+      if (message != null) {
+        out.name("msg").value(message);
+      }
+      out.endObject();
+    };
+  }
+
+  private static PayloadWriter push(String cmd, String requestId, long seq, PayloadWriter data) {
+    return out -> {
+      out.beginObject();
+      out.name("schema").value(SCHEMA);
+      out.name("mode").value("push");
+      out.name("cmd").value(cmd);
+      out.name("status").value("success");
+      out.name("timestamp").value(System.currentTimeMillis());
+      out.name("requestId").value(requestId);
+      out.name("seq").value(seq);
+      if (data != null) {
+        out.name("data");
+        data.write(out);
+      }
+      out.endObject();
+    };
+  }
+
+  private static ByteBuffer encodeBinary(PayloadWriter payload) {
+    CborWriter out = BINARY_WRITERS.poll();
+    if (out == null) {
+      out = new CborWriter(512);
+    }
+    try {
+      payload.write(out);
+      return out.toByteBuffer();
+    } catch (IOException ex) {
+      throw new JsonIOException(ex);
+    } finally {
+      if (out.capacity() <= MAX_RETAINED_CHARS && BINARY_WRITERS.size() < POOL_SIZE) {
+        out.reset();
+        BINARY_WRITERS.offer(out);
+      }
+    }
+  }
+
+  private static String encode(PayloadWriter payload) {
+    StringBuilder buffer = BUFFERS.poll();
+    if (buffer == null) {
+      buffer = new StringBuilder(512);
+    }
+    try {
+      JsonWriter out = new JsonWriter(new BuilderWriter(buffer));
+      out.setSerializeNulls(false);
+      payload.write(out);
+      out.flush();
+      return buffer.toString();
+    } catch (IOException ex) {
+      throw new JsonIOException(ex);
+    } finally {
+      if (buffer.capacity() <= MAX_RETAINED_CHARS && BUFFERS.size() < POOL_SIZE) {
+        buffer.setLength(0);
+        BUFFERS.offer(buffer);
+      }
+    }
+  }
+
+  private static final class BuilderWriter extends Writer {
+    private final StringBuilder target;
+
+    BuilderWriter(StringBuilder target) {
+      this.target = target;
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) {
+      target.append(chars, offset, length);
+    }
+
+    @Override
+    public void write(int c) {
+      target.append((char) c);
+    }
+
+    @Override
+    public void write(String str, int offset, int length) {
+      target.append(str, offset, offset + length);
+    }
+
+    @Override
+    public Writer append(CharSequence sequence) {
+      target.append(sequence);
+      return this;
+    }
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+  }
+}
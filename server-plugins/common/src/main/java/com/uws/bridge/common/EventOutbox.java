@@ -0,0 +1,560 @@
+package com.uws.bridge.common;
+
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+public final class EventOutbox {
+  private static final String SUFFIX = ".seg";
+  private static final String TAIL_SUFFIX = ".tail";
+  private static final int QUEUE_CAPACITY = 8192;
+  private static final int HEADER_BYTES = 8;
+  private static final long SEAL_TIMEOUT_MS = 5000;
+  private static final long RETENTION_INTERVAL_MS = 60000;
+
+  private final Path directory;
+  private final String epoch;
+  private final long segmentBytes;
+  private final long maxBytes;
+  private final long maxAgeMs;
+  private final Logger logger;
+  private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+  private final Map<String, Segment> active = new HashMap<>();
+  private final Map<String, Object> drainLocks = new ConcurrentHashMap<>();
+  private final LongAdder written = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder expired = new LongAdder();
+  private final LongAdder delivered = new LongAdder();
+  private final Thread writer;
+  private volatile boolean running = true;
+  private final AtomicLong storedBytes = new AtomicLong();
+  private final AtomicInteger storedSegments = new AtomicInteger();
+  private long lastSegmentName;
+  private long nextRetention;
+
+  public EventOutbox(Path directory, String epoch, BridgeConfig config, Logger logger) throws IOException {
+    this.directory = directory;
+    this.epoch = epoch;
+    this.segmentBytes = Math.max(4096, config.getOutboxSegmentBytes());
+    this.maxBytes = config.getOutboxMaxBytes();
+    this.maxAgeMs = config.getOutboxMaxAgeMs();
+    this.logger = logger;
+    Files.createDirectories(directory);
+    deleteTails();
+    enforceRetention();
+    this.writer = BridgeExecutors.daemonFactory("uwbp-outbox").newThread(this::run);
+    writer.start();
+  }
+
+  public boolean append(String topic, String cmd, long seq, PayloadWriter data) {
+    if (!running || !queue.offer(new Pending(topic, cmd, seq, data))) {
+      dropped.increment();
+      return false;
+    }
+    return true;
+  }
+
+  public int drain(String topic, Predicate<Record> sink) {
+    synchronized (drainLocks.computeIfAbsent(topic, unused -> new Object())) {
+      int count = 0;
+      for (Path segment : seal(topic)) {
+        byte[] bytes;
+        List<Record> records;
+        try {
+          bytes = Files.readAllBytes(segment);
+          records = read(bytes);
+        } catch (IOException ex) {
+          logger.log(Level.WARNING, "Failed to read bridge outbox segment " + segment, ex);
+          continue;
+        }
+        for (int i = 0; i < records.size(); i++) {
+          if (!sink.test(records.get(i))) {
+            keepTail(segment, bytes, records.get(i).offset, records.get(records.size() - 1).end);
+            return count;
+          }
+          count++;
+          delivered.increment();
+        }
+        delete(segment);
+      }
+      return count;
+    }
+  }
+
+  public void discard(String topic) {
+    if (!running || !queue.offer(new Discard(topic))) {
+      logger.warning(() -> "Bridge outbox busy, " + topic + " segments written during resume kept");
+    }
+  }
+
+  public JsonObject buildStats() {
+    JsonObject stats = new JsonObject();
+    stats.addProperty("queued", queue.size());
+    stats.addProperty("written", written.sum());
+    stats.addProperty("delivered", delivered.sum());
+    stats.addProperty("dropped", dropped.sum());
+    stats.addProperty("expired", expired.sum());
+    stats.addProperty("segments", storedSegments.get());
+    stats.addProperty("bytes", storedBytes.get());
+    return stats;
+  }
+
+  public void close() {
+    running = false;
+    queue.offer(new Seal(null));
+    try {
+      writer.join(SEAL_TIMEOUT_MS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private List<Path> seal(String topic) {
+    Seal seal = new Seal(topic);
+    try {
+      if (!running) {
+        return segments(topicDirectory(topic));
+      }
+      if (!queue.offer(seal, SEAL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        logger.warning(() -> "Bridge outbox busy, could not seal " + topic);
+        return new ArrayList<>();
+      }
+      return seal.done.get(SEAL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return new ArrayList<>();
+    } catch (ExecutionException | TimeoutException | IOException ex) {
+      logger.log(Level.WARNING, "Failed to seal bridge outbox for " + topic, ex);
+      return new ArrayList<>();
+    }
+  }
+
+  private void run() {
+    List<Object> batch = new ArrayList<>();
+    while (running || !queue.isEmpty()) {
+      try {
+        Object first = queue.poll(RETENTION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        if (first != null) {
+          batch.add(first);
+          queue.drainTo(batch);
+          process(batch);
+          batch.clear();
+        }
+      } catch (InterruptedException ex) {
+        return;
+      }
+      if (System.currentTimeMillis() >= nextRetention) {
+        enforceRetention();
+      }
+    }
+    active.values().forEach(Segment::close);
+    active.clear();
+  }
+
+  private void process(List<Object> batch) {
+    Map<Segment, List<ByteBuffer>> writes = new HashMap<>();
+    for (Object item : batch) {
+      if (item instanceof Pending) {
+        Pending pending = (Pending) item;
+        ByteBuffer record;
+        try {
+          record = encode(pending);
+        } catch (RuntimeException ex) {
+          logger.log(Level.WARNING, "Failed to encode bridge outbox record for " + pending.topic, ex);
+          continue;
+        }
+        Segment segment = segmentFor(pending.topic, writes);
+        if (segment != null) {
+          writes.computeIfAbsent(segment, unused -> new ArrayList<>()).add(record);
+          segment.size += record.remaining();
+        }
+      } else {
+        commit(writes);
+        String topic = item instanceof Seal ? ((Seal) item).topic : ((Discard) item).topic;
+        closeSegments(topic);
+        if (item instanceof Discard) {
+          deleteSegments(topic);
+        } else if (topic != null) {
+          ((Seal) item).done.complete(sealed(topic));
+        }
+      }
+    }
+    commit(writes);
+  }
+
+  private Segment segmentFor(String topic, Map<Segment, List<ByteBuffer>> writes) {
+    Segment segment = active.get(topic);
+    if (segment != null && segment.size < segmentBytes) {
+      return segment;
+    }
+    if (segment != null) {
+      commit(writes);
+      segment.close();
+      active.remove(topic);
+    }
+    try {
+      Path dir = topicDirectory(topic);
+      Files.createDirectories(dir);
+      lastSegmentName = Math.max(lastSegmentName + 1, System.currentTimeMillis());
+      Path path = dir.resolve(String.format("%013d%s", lastSegmentName, SUFFIX));
+      FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+      segment = new Segment(channel, path);
+      active.put(topic, segment);
+      storedSegments.incrementAndGet();
+      nextRetention = 0;
+      return segment;
+    } catch (IOException ex) {
+      logger.log(Level.WARNING, "Failed to open bridge outbox segment for " + topic, ex);
+      dropped.increment();
+      return null;
+    }
+  }
+
+  private void commit(Map<Segment, List<ByteBuffer>> writes) {
+    for (Map.Entry<Segment, List<ByteBuffer>> entry : writes.entrySet()) {
+      Segment segment = entry.getKey();
+      ByteBuffer[] buffers = entry.getValue().toArray(new ByteBuffer[0]);
+      try {
+        long bytes = 0;
+        for (ByteBuffer buffer : buffers) {
+          bytes += buffer.remaining();
+        }
+        long remaining = bytes;
+        while (remaining > 0) {
+          remaining -= segment.channel.write(buffers);
+        }
+        segment.channel.force(false);
+        written.add(buffers.length);
+        storedBytes.addAndGet(bytes);
+      } catch (IOException ex) {
+        logger.log(Level.WARNING, "Failed to write bridge outbox segment", ex);
+        dropped.add(buffers.length);
+      }
+    }
+    writes.clear();
+  }
+
+  private void closeSegments(String topic) {
+    Segment segment = active.remove(topic);
+    if (segment != null) {
+      segment.close();
+    }
+  }
+
+  private List<Path> sealed(String topic) {
+    try {
+      return segments(topicDirectory(topic));
+    } catch (IOException ex) {
+      logger.log(Level.WARNING, "Failed to list bridge outbox segments for " + topic, ex);
+      return new ArrayList<>();
+    }
+  }
+
+  private void deleteSegments(String topic) {
+    try {
+      for (Path segment : segments(topicDirectory(topic))) {
+        delete(segment);
+      }
+    } catch (IOException ex) {
+      logger.log(Level.WARNING, "Failed to discard bridge outbox segments for " + topic, ex);
+    }
+  }
+
+  private void enforceRetention() {
+    nextRetention = System.currentTimeMillis() + RETENTION_INTERVAL_MS;
+    List<Path> all = new ArrayList<>();
+    try (DirectoryStream<Path> dirs = Files.newDirectoryStream(directory, Files::isDirectory)) {
+      for (Path dir : dirs) {
+        all.addAll(segments(dir));
+      }
+    } catch (IOException ex) {
+      logger.log(Level.WARNING, "Failed to scan bridge outbox", ex);
+      return;
+    }
+    all.sort((left, right) -> left.getFileName().compareTo(right.getFileName()));
+    long cutoff = maxAgeMs > 0 ? System.currentTimeMillis() - maxAgeMs : Long.MIN_VALUE;
+    long total = 0;
+    long[] sizes = new long[all.size()];
+    for (int i = 0; i < all.size(); i++) {
+      try {
+        sizes[i] = Files.size(all.get(i));
+      } catch (IOException ignored) {
+        sizes[i] = 0;
+      }
+      total += sizes[i];
+    }
+    int segmentsLeft = all.size();
+    for (int i = 0; i < all.size(); i++) {
+      Path segment = all.get(i);
+      boolean tooOld = nameOf(segment) < cutoff;
+      boolean tooBig = maxBytes > 0 && total > maxBytes;
+      if ((!tooOld && !tooBig) || isActive(segment)) {
+        continue;
+      }
+      try {
+        expired.add(countRecords(segment));
+        Files.deleteIfExists(segment);
+        total -= sizes[i];
+        segmentsLeft--;
+      } catch (IOException ex) {
+        logger.log(Level.WARNING, "Failed to expire bridge outbox segment " + segment, ex);
+      }
+    }
+    storedBytes.set(total);
+    storedSegments.set(segmentsLeft);
+  }
+
+  private void delete(Path segment) {
+    try {
+      long size = Files.size(segment);
+      if (Files.deleteIfExists(segment)) {
+        storedBytes.addAndGet(-size);
+        storedSegments.decrementAndGet();
+      }
+    } catch (NoSuchFileException ignored) {
+    } catch (IOException ex) {
+      logger.log(Level.WARNING, "Failed to delete bridge outbox segment " + segment, ex);
+    }
+  }
+
+  private void keepTail(Path segment, byte[] bytes, int from, int to) {
+    if (from == 0 && to == bytes.length) {
+      return;
+    }
+    Path tail = segment.resolveSibling(segment.getFileName() + TAIL_SUFFIX);
+    try {
+      try (FileChannel channel = FileChannel.open(tail,
+          StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, from, to - from);
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+        channel.force(false);
+      }
+      Files.move(tail, segment, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      storedBytes.addAndGet(-(bytes.length - (to - from)));
+    } catch (IOException ex) {
+      logger.log(Level.WARNING, "Failed to trim bridge outbox segment " + segment, ex);
+    }
+  }
+
+  private void deleteTails() throws IOException {
+    try (DirectoryStream<Path> dirs = Files.newDirectoryStream(directory, Files::isDirectory)) {
+      for (Path dir : dirs) {
+        try (DirectoryStream<Path> tails = Files.newDirectoryStream(dir, "*" + TAIL_SUFFIX)) {
+          for (Path tail : tails) {
+            Files.deleteIfExists(tail);
+          }
+        }
+      }
+    }
+  }
+
+  private boolean isActive(Path path) {
+    for (Segment segment : active.values()) {
+      if (path.equals(segment.path)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Path topicDirectory(String topic) {
+    return directory.resolve(topic.replaceAll("[^A-Za-z0-9._-]", "_"));
+  }
+
+  private static List<Path> segments(Path dir) throws IOException {
+    List<Path> result = new ArrayList<>();
+    if (!Files.isDirectory(dir)) {
+      return result;
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+      files.forEach(result::add);
+    }
+    result.sort((left, right) -> left.getFileName().compareTo(right.getFileName()));
+    return result;
+  }
+
+  private static long nameOf(Path segment) {
+    String name = segment.getFileName().toString();
+    try {
+      return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    } catch (NumberFormatException ex) {
+      return 0;
+    }
+  }
+
+  private ByteBuffer encode(Pending pending) {
+    byte[] cmd = pending.cmd.getBytes(StandardCharsets.UTF_8);
+    byte[] recordEpoch = epoch.getBytes(StandardCharsets.UTF_8);
+    byte[] data = pending.data != null
+        ? EnvelopeWriter.encodePayload(pending.data).getBytes(StandardCharsets.UTF_8)
+        : new byte[0];
+    int length = 2 + cmd.length + 2 + recordEpoch.length + 8 + data.length;
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + length);
+    buffer.putInt(length);
+    buffer.putInt(0);
+    buffer.putShort((short) cmd.length).put(cmd);
+    buffer.putShort((short) recordEpoch.length).put(recordEpoch);
+    buffer.putLong(pending.seq);
+    buffer.put(data);
+    CRC32 crc = new CRC32();
+    crc.update(buffer.array(), HEADER_BYTES, length);
+    buffer.putInt(4, (int) crc.getValue());
+    buffer.flip();
+    return buffer;
+  }
+
+  private static List<Record> read(byte[] bytes) {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    List<Record> records = new ArrayList<>();
+    CRC32 crc = new CRC32();
+    while (buffer.remaining() >= HEADER_BYTES) {
+      int offset = buffer.position();
+      int length = buffer.getInt();
+      int checksum = buffer.getInt();
+      if (length <= 0 || length > buffer.remaining()) {
+        break;
+      }
+      crc.reset();
+      crc.update(buffer.array(), buffer.position(), length);
+      if ((int) crc.getValue() != checksum) {
+        break;
+      }
+      ByteBuffer body = buffer.slice();
+      body.limit(length);
+      buffer.position(buffer.position() + length);
+      String cmd = readString(body);
+      String recordEpoch = readString(body);
+      long seq = body.getLong();
+      String data = body.hasRemaining()
+          ? new String(body.array(), body.arrayOffset() + body.position(), body.remaining(), StandardCharsets.UTF_8)
+          : null;
+      records.add(new Record(cmd, recordEpoch, seq, data, offset, buffer.position()));
+    }
+    return records;
+  }
+
+  private static int countRecords(Path segment) {
+    try {
+      return read(Files.readAllBytes(segment)).size();
+    } catch (IOException ex) {
+      return 0;
+    }
+  }
+
+  private static String readString(ByteBuffer body) {
+    byte[] bytes = new byte[body.getShort() & 0xffff];
+    body.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  public static final class Record {
+    private final String cmd;
+    private final String epoch;
+    private final long seq;
+    private final String data;
+    private final int offset;
+    private final int end;
+
+    Record(String cmd, String epoch, long seq, String data, int offset, int end) {
+      this.cmd = cmd;
+      this.epoch = epoch;
+      this.seq = seq;
+      this.data = data;
+      this.offset = offset;
+      this.end = end;
+    }
+
+    public String getCmd() {
+      return cmd;
+    }
+
+    public String getEpoch() {
+      return epoch;
+    }
+
+    public long getSeq() {
+      return seq;
+    }
+
+    public String getData() {
+      return data;
+    }
+  }
+
+  private static final class Pending {
+    final String topic;
+    final String cmd;
+    final long seq;
+    final PayloadWriter data;
+
+    Pending(String topic, String cmd, long seq, PayloadWriter data) {
+      this.topic = topic;
+      this.cmd = cmd;
+      this.seq = seq;
+      this.data = data;
+    }
+  }
+
+  private static final class Seal {
+    final String topic;
+    final CompletableFuture<List<Path>> done = new CompletableFuture<>();
+
+    Seal(String topic) {
+      this.topic = topic;
+    }
+  }
+
+  private static final class Discard {
+    final String topic;
+
+    Discard(String topic) {
+      this.topic = topic;
+    }
+  }
+
+  private static final class Segment {
+    final FileChannel channel;
+    final Path path;
+    long size;
+
+    Segment(FileChannel channel, Path path) {
+      this.channel = channel;
+      this.path = path;
+    }
+
+    void close() {
+      try {
+        channel.close();
+      } catch (IOException ignored) {
+      }
+    }
+  }
+}
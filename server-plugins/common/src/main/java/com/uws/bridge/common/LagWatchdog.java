@@ -0,0 +1,181 @@
+package com.uws.bridge.common;
+
+import com.google.gson.JsonObject;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public final class LagWatchdog {
+  public static final String TOPIC = "metrics.lag";
+  private static final long POLL_MS = 50;
+  private static final long SAMPLE_INTERVAL_MS = 100;
+
+  private final BridgeServer server;
+  private final Logger logger;
+  private final long thresholdNanos;
+  private final int samples;
+  private final int depth;
+  private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+  private final LongAdder spikes = new LongAdder();
+  private volatile Thread serverThread;
+  private volatile long tickStartedAt;
+  private volatile long tickSerial;
+  private volatile long reportedSerial;
+  private volatile long lastSpikeMs;
+  private volatile long lastSpikeAt;
+  private volatile long longestSpikeMs;
+  private volatile boolean running;
+  private Thread watcher;
+
+  LagWatchdog(BridgeServer server, BridgeConfig config, Logger logger) {
+    this.server = server;
+    this.logger = logger;
+    this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(config.getLagThresholdMs());
+    this.samples = Math.max(1, config.getLagSamples());
+    this.depth = Math.max(1, config.getLagStackDepth());
+  }
+
+  public boolean isEnabled() {
+    return thresholdNanos > 0;
+  }
+
+  public void tickStart() {
+    Thread current = Thread.currentThread();
+    if (serverThread != current) {
+      serverThread = current;
+    }
+    tickSerial = tickSerial + 1;
+    tickStartedAt = System.nanoTime();
+  }
+
+  public void tickEnd() {
+    long started = tickStartedAt;
+    tickStartedAt = 0;
+    if (started != 0 && reportedSerial == tickSerial) {
+      spikeEnded(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+  }
+
+  void start() {
+    if (!isEnabled() || watcher != null) {
+      return;
+    }
+    running = true;
+    watcher = BridgeExecutors.daemonFactory("uwbp-lag-watchdog").newThread(this::run);
+    watcher.start();
+  }
+
+  void close() {
+    running = false;
+    Thread current = watcher;
+    watcher = null;
+    if (current != null) {
+      current.interrupt();
+    }
+  }
+
+  public JsonObject buildStats() {
+    JsonObject stats = new JsonObject();
+    stats.addProperty("thresholdMs", TimeUnit.NANOSECONDS.toMillis(thresholdNanos));
+    stats.addProperty("spikes", spikes.sum());
+    stats.addProperty("lastSpikeMs", lastSpikeMs);
+    stats.addProperty("lastSpikeAt", lastSpikeAt);
+    stats.addProperty("longestSpikeMs", longestSpikeMs);
+    return stats;
+  }
+
+  private void run() {
+    while (running) {
+      try {
+        Thread.sleep(POLL_MS);
+        long started = tickStartedAt;
+        long serial = tickSerial;
+        Thread thread = serverThread;
+        if (started == 0 || thread == null || serial == reportedSerial || System.nanoTime() - started < thresholdNanos) {
+          continue;
+        }
+        reportedSerial = serial;
+        spikes.increment();
+        lastSpikeAt = System.currentTimeMillis();
+        lastSpikeMs = 0;
+        report(thread, serial, started);
+      } catch (InterruptedException ex) {
+        return;
+      } catch (RuntimeException ex) {
+        logger.log(Level.WARNING, "Bridge lag watchdog failed", ex);
+      }
+    }
+  }
+
+  private void report(Thread thread, long serial, long started) throws InterruptedException {
+    Map<String, Integer> folded = new HashMap<>();
+    int taken = 0;
+    if (server.hasSubscribers(TOPIC)) {
+      for (int i = 0; i < samples && running; i++) {
+        if (i > 0) {
+          Thread.sleep(SAMPLE_INTERVAL_MS);
+        }
+        if (tickSerial != serial || tickStartedAt == 0) {
+          break;
+        }
+        ThreadInfo info = threads.getThreadInfo(thread.getId(), depth);
+        if (info != null) {
+          folded.merge(fold(info.getStackTrace()), 1, Integer::sum);
+          taken++;
+        }
+      }
+    }
+    long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+    spikeEnded(elapsedMs);
+    logger.warning(() -> "Server thread " + thread.getName() + " has been in one tick for " + elapsedMs + " ms");
+    List<Map.Entry<String, Integer>> stacks = new ArrayList<>(folded.entrySet());
+    stacks.sort((left, right) -> right.getValue() - left.getValue());
+    int sampled = taken;
+    String eventId = server.nextId();
+    long timestamp = System.currentTimeMillis();
+    server.broadcast(TOPIC, "events.lag", out -> {
+      out.beginObject();
+      out.name("eventId").value(eventId);
+      out.name("timestamp").value(timestamp);
+      out.name("thread").value(thread.getName());
+      out.name("thresholdMs").value(TimeUnit.NANOSECONDS.toMillis(thresholdNanos));
+      out.name("elapsedMs").value(elapsedMs);
+      out.name("samples").value(sampled);
+      out.name("stacks").beginArray();
+      for (Map.Entry<String, Integer> stack : stacks) {
+        out.beginObject();
+        out.name("stack").value(stack.getKey());
+        out.name("count").value(stack.getValue());
+        out.endObject();
+      }
+      out.endArray();
+      out.endObject();
+    });
+  }
+
+  private void spikeEnded(long elapsedMs) {
+    lastSpikeMs = Math.max(lastSpikeMs, elapsedMs);
+    if (elapsedMs > longestSpikeMs) {
+      longestSpikeMs = elapsedMs;
+    }
+  }
+
+  private static String fold(StackTraceElement[] frames) {
+    StringBuilder folded = new StringBuilder();
+    for (int i = frames.length - 1; i >= 0; i--) {
+      if (folded.length() > 0) {
+        folded.append(';');
+      }
+      folded.append(frames[i].getClassName()).append('.').append(frames[i].getMethodName());
+    }
+    return folded.toString();
+  }
+}
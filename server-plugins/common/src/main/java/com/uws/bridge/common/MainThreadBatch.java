@@ -0,0 +1,67 @@
+package com.uws.bridge.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+public final class MainThreadBatch implements AutoCloseable {
+  private static final ThreadLocal<MainThreadBatch> CURRENT = new ThreadLocal<>();
+
+  private final MainThreadBatch parent;
+  private final List<Runnable> tasks = new ArrayList<>();
+  private Executor executor;
+
+  private MainThreadBatch(MainThreadBatch parent) {
+    this.parent = parent;
+  }
+
+  public static MainThreadBatch open() {
+    MainThreadBatch batch = new MainThreadBatch(CURRENT.get());
+    CURRENT.set(batch);
+    return batch;
+  }
+
+  public static <T> CompletableFuture<T> supply(Executor mainThread, Supplier<T> supplier) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    Runnable task = () -> {
+      if (future.isDone()) {
+        return;
+      }
+      try {
+        future.complete(supplier.get());
+      } catch (Throwable throwable) {
+        future.completeExceptionally(throwable);
+      }
+    };
+    MainThreadBatch batch = CURRENT.get();
+    if (batch != null && (batch.executor == null || batch.executor == mainThread)) {
+      batch.executor = mainThread;
+      batch.tasks.add(task);
+    } else {
+      mainThread.execute(task);
+    }
+    return future;
+  }
+
+  @Override
+  public void close() {
+    if (parent != null) {
+      CURRENT.set(parent);
+    } else {
+      CURRENT.remove();
+    }
+    if (tasks.isEmpty()) {
+      return;
+    }
+    List<Runnable> pending = new ArrayList<>(tasks);
+    tasks.clear();
+    // Queue lanes spread their tasks over ticks by budget; only real scheduler hops are folded.
+    if (MainThreadQueue.isLane(executor)) {
+      pending.forEach(executor::execute);
+    } else {
+      executor.execute(() -> pending.forEach(Runnable::run));
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package com.uws.bridge.common;
+
+import com.google.gson.JsonObject;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public final class MainThreadQueue {
+  public enum Lane {
+    URGENT,
+    NORMAL,
+    BULK;
+
+    private static final Set<String> URGENT_ACTIONS = Set.of("kickPlayer", "blacklistAdd", "stopServer", "reloadServer");
+
+    public static Lane forControl(JsonObject payload) {
+      String action = payload != null && payload.has("action") ? payload.get("action").getAsString() : null;
+      return action != null && URGENT_ACTIONS.contains(action) ? URGENT : NORMAL;
+    }
+  }
+
+  private static final Lane[] LANES = Lane.values();
+
+  private final long budgetNanos;
+  private final Logger logger;
+  private final Queue<Runnable>[] lanes;
+  private final Executor[] executors;
+  private final AtomicInteger pending = new AtomicInteger();
+  private volatile long ticks;
+  private volatile long tasksRun;
+  private volatile long carriedTicks;
+  private volatile long lastDrainNanos;
+  private volatile long maxDrainNanos;
+  private volatile long totalDrainNanos;
+  private volatile int lastCarried;
+
+  @SuppressWarnings("unchecked")
+  public MainThreadQueue(int budgetMs, Logger logger) {
+    this.budgetNanos = budgetMs * 1_000_000L;
+    this.logger = logger;
+    this.lanes = new Queue[LANES.length];
+    this.executors = new Executor[LANES.length];
+    for (Lane lane : LANES) {
+      Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+      lanes[lane.ordinal()] = queue;
+      executors[lane.ordinal()] = new LaneExecutor(queue, pending);
+    }
+  }
+
+  public Executor executor(Lane lane) {
+    return executors[lane.ordinal()];
+  }
+
+  static boolean isLane(Executor executor) {
+    return executor instanceof LaneExecutor;
+  }
+
+  public void drain() {
+    if (pending.get() == 0) {
+      return;
+    }
+    long start = System.nanoTime();
+    long deadline = start + budgetNanos;
+    int ran = 0;
+    for (Lane lane : LANES) {
+      Queue<Runnable> queue = lanes[lane.ordinal()];
+      while (lane == Lane.URGENT || ran == 0 || budgetNanos <= 0 || System.nanoTime() < deadline) {
+        Runnable task = queue.poll();
+        if (task == null) {
+          break;
+        }
+        pending.decrementAndGet();
+        ran++;
+        try {
+          task.run();
+        } catch (RuntimeException ex) {
+          logger.log(Level.WARNING, "Bridge main-thread task failed", ex);
+        }
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+    int left = pending.get();
+    ticks++;
+    tasksRun += ran;
+    totalDrainNanos += elapsed;
+    lastDrainNanos = elapsed;
+    lastCarried = left;
+    if (elapsed > maxDrainNanos) {
+      maxDrainNanos = elapsed;
+    }
+    if (left > 0) {
+      carriedTicks++;
+    }
+  }
+
+  public JsonObject buildStats() {
+    long drained = ticks;
+    JsonObject stats = new JsonObject();
+    stats.addProperty("budgetMs", budgetNanos / 1_000_000.0);
+    stats.addProperty("pending", pending.get());
+    stats.addProperty("ticks", drained);
+    stats.addProperty("tasks", tasksRun);
+    stats.addProperty("lastDrainMs", round(lastDrainNanos));
+    stats.addProperty("avgDrainMs", drained > 0 ? round(totalDrainNanos / drained) : 0.0);
+    stats.addProperty("maxDrainMs", round(maxDrainNanos));
+    stats.addProperty("carriedTicks", carriedTicks);
+    stats.addProperty("lastCarried", lastCarried);
+    return stats;
+  }
+
+  private static double round(long nanos) {
+    return Math.round(nanos / 10_000.0) / 100.0;
+  }
+
+  private static final class LaneExecutor implements Executor {
+    private final Queue<Runnable> queue;
+    private final AtomicInteger pending;
+
+    LaneExecutor(Queue<Runnable> queue, AtomicInteger pending) {
+      this.queue = queue;
+      this.pending = pending;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+      queue.add(task);
+      pending.incrementAndGet();
+    }
+  }
+}
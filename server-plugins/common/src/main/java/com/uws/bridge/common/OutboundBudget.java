@@ -0,0 +1,128 @@
+package com.uws.bridge.common;
+
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+
+public class OutboundBudget {
+  private static final long BYTES_REFRESH_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+  public enum State {
+    WITHIN,
+    OVER,
+    EXHAUSTED
+  }
+
+  private final int maxFrames;
+  private final long maxBytes;
+  private final long graceMs;
+  private final Map<String, Object> coalesced = new ConcurrentHashMap<>();
+  private final LongAdder droppedFrames = new LongAdder();
+  private final LongAdder coalescedFrames = new LongAdder();
+  private volatile long overSince;
+  private volatile int frames;
+  private volatile long bytes;
+  private volatile long bytesMeasuredAt;
+
+  public OutboundBudget(int maxFrames, long maxBytes, long graceMs) {
+    this.maxFrames = maxFrames;
+    this.maxBytes = maxBytes;
+    this.graceMs = graceMs;
+  }
+
+  public State check(WebSocket conn) {
+    measure(conn);
+    boolean over = (maxFrames > 0 && frames > maxFrames) || (maxBytes > 0 && bytes > maxBytes);
+    if (!over) {
+      overSince = 0;
+      return State.WITHIN;
+    }
+    long now = System.currentTimeMillis();
+    if (overSince == 0) {
+      overSince = now;
+    }
+    return graceMs > 0 && now - overSince >= graceMs ? State.EXHAUSTED : State.OVER;
+  }
+
+  public void coalesce(String topic, Object frame) {
+    if (coalesced.put(topic, frame) != null) {
+      coalescedFrames.increment();
+    }
+  }
+
+  public void drop() {
+    droppedFrames.increment();
+  }
+
+  public void flush(WebSocket conn) {
+    if (coalesced.isEmpty()) {
+      return;
+    }
+    Iterator<Map.Entry<String, Object>> pending = coalesced.entrySet().iterator();
+    while (pending.hasNext()) {
+      Object frame = pending.next().getValue();
+      pending.remove();
+      if (frame instanceof ByteBuffer) {
+        conn.send(((ByteBuffer) frame).duplicate());
+      } else {
+        conn.send((String) frame);
+      }
+    }
+  }
+
+  public long getDroppedFrames() {
+    return droppedFrames.sum();
+  }
+
+  public long getCoalescedFrames() {
+    return coalescedFrames.sum();
+  }
+
+  public void writeStats(JsonWriter out) throws IOException {
+    long since = overSince;
+    out.beginObject();
+    out.name("frames").value(frames);
+    out.name("bytes").value(bytes);
+    out.name("pendingCoalesced").value(coalesced.size());
+    out.name("dropped").value(droppedFrames.sum());
+    out.name("coalesced").value(coalescedFrames.sum());
+    out.name("overBudgetMs").value(since == 0 ? 0 : System.currentTimeMillis() - since);
+    out.endObject();
+  }
+
+  private void measure(WebSocket conn) {
+    if (!(conn instanceof WebSocketImpl)) {
+      return;
+    }
+    Queue<ByteBuffer> queue = ((WebSocketImpl) conn).outQueue;
+    int size = queue.size();
+    frames = size;
+    if (size == 0) {
+      bytes = 0;
+      bytesMeasuredAt = 0;
+      return;
+    }
+    long now = System.nanoTime();
+    long measuredAt = bytesMeasuredAt;
+    if (measuredAt != 0 && now - measuredAt < BYTES_REFRESH_NANOS) {
+      return;
+    }
+    bytesMeasuredAt = now;
+    long total = 0;
+    for (ByteBuffer buffer : queue) {
+      total += buffer.remaining();
+      if (maxBytes > 0 && total > maxBytes) {
+        break;
+      }
+    }
+    bytes = total;
+  }
+}
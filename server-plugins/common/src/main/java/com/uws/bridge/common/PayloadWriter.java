@@ -0,0 +1,9 @@
+package com.uws.bridge.common;
+
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+
+@FunctionalInterface
+public interface PayloadWriter {
+  void write(JsonWriter out) throws IOException;
+}
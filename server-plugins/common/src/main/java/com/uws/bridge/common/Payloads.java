@@ -0,0 +1,84 @@
+package com.uws.bridge.common;
+
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+
+public final class Payloads {
+  private Payloads() {}
+
+  public static PayloadWriter metricsTick(double tps, double mspt, int players, int maxPlayers) {
+    return metricsTick(tps, mspt, players, maxPlayers, null);
+  }
+
+  public static PayloadWriter metricsTick(double tps, double mspt, int players, int maxPlayers, PayloadWriter tickTimes) {
+    return out -> {
+      out.beginObject();
+      out.name("tps").value(tps);
+      out.name("mspt").value(mspt);
+      out.name("players").value(players);
+      out.name("maxPlayers").value(maxPlayers);
+      if (tickTimes != null) {
+        out.name("tickTimes");
+        tickTimes.write(out);
+      }
+      out.endObject();
+    };
+  }
+
+  public static PayloadWriter chatEvent(String eventId, long timestamp, String player, String uuid, String message) {
+    return out -> {
+      out.beginObject();
+      out.name("eventId").value(eventId);
+      out.name("timestamp").value(timestamp);
+      out.name("player").value(player);
+      if (uuid != null) {
+        out.name("uuid").value(uuid);
+      }
+      out.name("message").value(message);
+      out.endObject();
+    };
+  }
+
+  public static PayloadWriter playerEvent(String eventId, long timestamp, String type, String name, String uuid, String ip) {
+    return out -> {
+      out.beginObject();
+      out.name("eventId").value(eventId);
+      out.name("timestamp").value(timestamp);
+      out.name("type").value(type);
+      out.name("player");
+      out.beginObject();
+      out.name("name").value(name);
+      out.name("uuid").value(uuid);
+      out.name("ip").value(ip);
+      out.endObject();
+      out.endObject();
+    };
+  }
+
+  public static void writePlayerEntry(
+      JsonWriter out,
+      String name,
+      String uuid,
+      String ip,
+      String auth,
+      int ping,
+      Boolean op,
+      String gamemode,
+      long firstJoin,
+      long lastSeen) throws IOException {
+    out.beginObject();
+    out.name("name").value(name);
+    out.name("uuid").value(uuid);
+    out.name("ip").value(ip);
+    out.name("platform").value("Java");
+    out.name("auth").value(auth);
+    out.name("ping").value(ping);
+    if (op != null) {
+      out.name("op").value(op);
+    }
+    out.name("gamemode").value(gamemode);
+    out.name("firstJoin").value(firstJoin);
+    out.name("lastSeen").value(lastSeen);
+    out.endObject();
+  }
+}
@@ -0,0 +1,114 @@
+package com.uws.bridge.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjLongConsumer;
+
+public final class PushBatcher {
+  public static final int DEFAULT_WINDOW_MS = 200;
+  public static final int DEFAULT_MAX_ITEMS = 100;
+
+  private final String topic;
+  private final Spec spec;
+  private final ScheduledExecutorService scheduler;
+  private final ObjLongConsumer<PayloadWriter> sink;
+  private List<PayloadWriter> items = new ArrayList<>();
+  private long firstSeq;
+  private long lastSeq;
+  private ScheduledFuture<?> pending;
+
+  public PushBatcher(String topic, Spec spec, ScheduledExecutorService scheduler, ObjLongConsumer<PayloadWriter> sink) {
+    this.topic = topic;
+    this.spec = spec;
+    this.scheduler = scheduler;
+    this.sink = sink;
+  }
+
+  public String getTopic() {
+    return topic;
+  }
+
+  public Spec getSpec() {
+    return spec;
+  }
+
+  public synchronized void add(long seq, PayloadWriter item) {
+    if (items.isEmpty()) {
+      firstSeq = seq;
+    }
+    lastSeq = seq;
+    items.add(item);
+    if (items.size() >= spec.maxItems) {
+      flush();
+    } else if (pending == null) {
+      pending = scheduler.schedule(this::flush, spec.windowMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  public synchronized void flush() {
+    if (pending != null) {
+      pending.cancel(false);
+      pending = null;
+    }
+    if (items.isEmpty()) {
+      return;
+    }
+    List<PayloadWriter> batch = items;
+    long first = firstSeq;
+    items = new ArrayList<>(batch.size());
+    sink.accept(out -> {
+      out.beginObject();
+      out.name("count").value(batch.size());
+      out.name("firstSeq").value(first);
+      out.name("items").beginArray();
+      for (PayloadWriter item : batch) {
+        if (item != null) {
+          item.write(out);
+        } else {
+          out.nullValue();
+        }
+      }
+      out.endArray();
+      out.endObject();
+    }, lastSeq);
+  }
+
+  public static final class Spec {
+    private final int windowMs;
+    private final int maxItems;
+
+    public Spec(int windowMs, int maxItems) {
+      this.windowMs = Math.max(10, Math.min(windowMs, 5000));
+      this.maxItems = Math.max(1, Math.min(maxItems, 1000));
+    }
+
+    public int getWindowMs() {
+      return windowMs;
+    }
+
+    public int getMaxItems() {
+      return maxItems;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof Spec)) {
+        return false;
+      }
+      Spec that = (Spec) other;
+      return windowMs == that.windowMs && maxItems == that.maxItems;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(windowMs, maxItems);
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package com.uws.bridge.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public final class ReplayRing {
+  private final Entry[] entries;
+  private final AtomicBoolean idled = new AtomicBoolean();
+  private long lastSeq;
+  private long unrecordedSeq;
+
+  public ReplayRing(int capacity) {
+    this.entries = new Entry[Math.max(0, capacity)];
+  }
+
+  public void markIdle() {
+    idled.set(true);
+  }
+
+  public synchronized long append(String cmd, PayloadWriter data) {
+    settle();
+    long seq = ++lastSeq;
+    if (entries.length > 0) {
+      entries[(int) (seq % entries.length)] = new Entry(seq, cmd, data);
+    }
+    return seq;
+  }
+
+  public synchronized long getLastSeq() {
+    settle();
+    return lastSeq;
+  }
+
+  public synchronized long getUnrecordedSeq() {
+    settle();
+    return unrecordedSeq;
+  }
+
+  public synchronized long getOldestSeq() {
+    return Math.max(1, lastSeq - entries.length + 1);
+  }
+
+  public synchronized List<Entry> since(long seq) {
+    settle();
+    long from = Math.max(seq + 1, getOldestSeq());
+    List<Entry> result = new ArrayList<>((int) Math.max(0, lastSeq - from + 1));
+    for (long next = from; next <= lastSeq; next++) {
+      Entry entry = entries[(int) (next % entries.length)];
+      if (entry != null && entry.seq == next) {
+        result.add(entry);
+      }
+    }
+    return result;
+  }
+
+  private void settle() {
+    if (idled.compareAndSet(true, false)) {
+      unrecordedSeq = ++lastSeq;
+    }
+  }
+
+  public static final class Entry {
+    private final long seq;
+    private final String cmd;
+    private final PayloadWriter data;
+
+    Entry(long seq, String cmd, PayloadWriter data) {
+      this.seq = seq;
+      this.cmd = cmd;
+      this.data = data;
+    }
+
+    public long getSeq() {
+      return seq;
+    }
+
+    public String getCmd() {
+      return cmd;
+    }
+
+    public PayloadWriter getData() {
+      return data;
+    }
+  }
+}
@@ -0,0 +1,374 @@
+package com.uws.bridge.common;
+
+import com.google.gson.JsonObject;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public final class SamplingProfiler {
+  private static final int MAX_NODES = 200_000;
+  private static final int MAX_INTERVAL_MS = 1000;
+  private static final double OVERHEAD_BUDGET = 0.01;
+  private static final long THREAD_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final BridgeConfig config;
+  private final Logger logger;
+  private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+  private Session session;
+  private Result result;
+
+  SamplingProfiler(BridgeConfig config, Logger logger) {
+    this.config = config;
+    this.logger = logger;
+  }
+
+  synchronized BridgeResponse start(JsonObject data) {
+    if (session != null && session.isRunning()) {
+      return BridgeResponse.failure("profiler already running");
+    }
+    int intervalMs = clamp(intOption(data, "intervalMs", config.getProfilerIntervalMs()), 1, MAX_INTERVAL_MS);
+    int maxMs = config.getProfilerMaxMs();
+    int durationMs = intOption(data, "durationMs", maxMs);
+    durationMs = maxMs > 0 ? clamp(durationMs, 1, maxMs) : Math.max(1, durationMs);
+    int depth = clamp(intOption(data, "depth", 128), 1, 1024);
+    String filter = data != null && data.has("thread") ? data.get("thread").getAsString() : null;
+    boolean idle = data != null && data.has("idle") && data.get("idle").getAsBoolean();
+    result = null;
+    session = new Session(intervalMs, durationMs, depth, filter, idle);
+    session.thread.start();
+    JsonObject response = new JsonObject();
+    response.addProperty("intervalMs", intervalMs);
+    response.addProperty("durationMs", durationMs);
+    return BridgeResponse.success(response);
+  }
+
+  synchronized BridgeResponse stop() {
+    Session current = session;
+    if (current == null) {
+      return BridgeResponse.failure("profiler not running");
+    }
+    session = null;
+    current.finish();
+    result = current.render(config.getProfilerChunkBytes());
+    return result.chunk(0);
+  }
+
+  synchronized BridgeResponse result(JsonObject data) {
+    if (result == null) {
+      return BridgeResponse.failure("no profile available");
+    }
+    int chunk = intOption(data, "chunk", 0);
+    if (chunk < 0 || chunk >= result.chunks.size()) {
+      return BridgeResponse.failure("chunk out of range");
+    }
+    return result.chunk(chunk);
+  }
+
+  synchronized void close() {
+    if (session != null) {
+      session.finish();
+      session = null;
+    }
+    result = null;
+  }
+
+  private static int clamp(int value, int min, int max) {
+    return Math.max(min, Math.min(max, value));
+  }
+
+  private static int utf8Length(String text) {
+    int bytes = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c < 0x80) {
+        bytes++;
+      } else if (c < 0x800) {
+        bytes += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+        bytes += 4;
+        i++;
+      } else {
+        bytes += 3;
+      }
+    }
+    return bytes;
+  }
+
+  private static int intOption(JsonObject data, String key, int fallback) {
+    return data != null && data.has(key) && data.get(key).isJsonPrimitive() ? data.get(key).getAsInt() : fallback;
+  }
+
+  private final class Session {
+    private final Thread thread;
+    private final int depth;
+    private final String filter;
+    private final boolean idle;
+    private final int requestedMs;
+    private final long durationNanos;
+    private final Map<StackTraceElement, Integer> elements = new HashMap<>();
+    private final Map<String, Integer> labelIds = new HashMap<>();
+    private final List<String> labels = new ArrayList<>();
+    private final Map<Long, Integer> threadLabels = new HashMap<>();
+    private final Node root = new Node(-1);
+    private volatile boolean running = true;
+    private long startedAt;
+    private long endedAt;
+    private long busyNanos;
+    private long maxCost;
+    private long averageCost;
+    private long nextRefresh;
+    private long[] threadIds = new long[0];
+    private int intervalMs;
+    private int samples;
+    private int nodes;
+    private int truncated;
+    private int chunkUsed;
+
+    Session(int intervalMs, int durationMs, int depth, String filter, boolean idle) {
+      this.requestedMs = intervalMs;
+      this.intervalMs = intervalMs;
+      this.durationNanos = TimeUnit.MILLISECONDS.toNanos(durationMs);
+      this.depth = depth;
+      this.filter = filter != null && !filter.isEmpty() ? filter : null;
+      this.idle = idle;
+      this.thread = BridgeExecutors.daemonFactory("uwbp-profiler").newThread(this::run);
+    }
+
+    boolean isRunning() {
+      return running && thread.isAlive();
+    }
+
+    void finish() {
+      running = false;
+      thread.interrupt();
+      try {
+        thread.join(TimeUnit.SECONDS.toMillis(5));
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void run() {
+      startedAt = System.nanoTime();
+      long self = Thread.currentThread().getId();
+      try {
+        while (running && System.nanoTime() - startedAt < durationNanos) {
+          long before = System.nanoTime();
+          sample(self, before);
+          long cost = System.nanoTime() - before;
+          busyNanos += cost;
+          maxCost = Math.max(maxCost, cost);
+          if (samples > 1) {
+            averageCost = averageCost == 0 ? cost : (averageCost * 7 + cost) / 8;
+            int budgetMs = (int) Math.min(MAX_INTERVAL_MS, TimeUnit.NANOSECONDS.toMillis((long) (averageCost / OVERHEAD_BUDGET)));
+            intervalMs = Math.max(requestedMs, budgetMs);
+          }
+          Thread.sleep(intervalMs);
+        }
+      } catch (InterruptedException ignored) {
+      } catch (RuntimeException ex) {
+        logger.log(Level.WARNING, "Bridge profiler failed", ex);
+      } finally {
+        endedAt = System.nanoTime();
+        running = false;
+      }
+    }
+
+    private void sample(long self, long now) {
+      ThreadInfo[] infos;
+      if (filter == null) {
+        infos = threads.dumpAllThreads(false, false, depth);
+      } else {
+        if (now >= nextRefresh) {
+          refreshThreads();
+          nextRefresh = now + THREAD_REFRESH_NANOS;
+        }
+        infos = threads.getThreadInfo(threadIds, depth);
+      }
+      samples++;
+      for (ThreadInfo info : infos) {
+        if (info == null || info.getThreadId() == self) {
+          continue;
+        }
+        Thread.State state = info.getThreadState();
+        if (!idle && (state == Thread.State.WAITING || state == Thread.State.TIMED_WAITING)) {
+          continue;
+        }
+        record(info);
+      }
+    }
+
+    private void refreshThreads() {
+      ThreadInfo[] all = threads.getThreadInfo(threads.getAllThreadIds(), 0);
+      long[] matched = new long[all.length];
+      int count = 0;
+      for (ThreadInfo info : all) {
+        if (info != null && info.getThreadName().contains(filter)) {
+          matched[count++] = info.getThreadId();
+        }
+      }
+      threadIds = Arrays.copyOf(matched, count);
+    }
+
+    private void record(ThreadInfo info) {
+      StackTraceElement[] frames = info.getStackTrace();
+      if (frames.length == 0) {
+        return;
+      }
+      Integer threadLabel = threadLabels.get(info.getThreadId());
+      if (threadLabel == null) {
+        threadLabel = label(info.getThreadName().replaceAll("\\d+", "#"));
+        threadLabels.put(info.getThreadId(), threadLabel);
+      }
+      Node node = child(root, threadLabel);
+      if (node == null) {
+        return;
+      }
+      for (int i = frames.length - 1; i >= 0; i--) {
+        Integer id = elements.get(frames[i]);
+        if (id == null) {
+          id = label(frames[i].getClassName() + '.' + frames[i].getMethodName());
+          elements.put(frames[i], id);
+        }
+        Node next = child(node, id);
+        if (next == null) {
+          truncated++;
+          break;
+        }
+        node = next;
+      }
+      node.self++;
+    }
+
+    private Node child(Node parent, int label) {
+      Node found = parent.find(label);
+      if (found == null && nodes < MAX_NODES) {
+        found = parent.add(label);
+        nodes++;
+      }
+      return found;
+    }
+
+    private int label(String name) {
+      Integer id = labelIds.get(name);
+      if (id == null) {
+        id = labels.size();
+        labels.add(name);
+        labelIds.put(name, id);
+      }
+      return id;
+    }
+
+    Result render(int chunkBytes) {
+      List<String> chunks = new ArrayList<>();
+      StringBuilder chunk = new StringBuilder();
+      StringBuilder path = new StringBuilder();
+      chunkUsed = 0;
+      for (int i = 0; i < root.size; i++) {
+        fold(root.children[i], path, 0, chunk, chunks, chunkBytes);
+      }
+      if (chunk.length() > 0 || chunks.isEmpty()) {
+        chunks.add(chunk.toString());
+      }
+      long elapsed = Math.max(1, (endedAt > 0 ? endedAt : System.nanoTime()) - startedAt);
+      JsonObject summary = new JsonObject();
+      summary.addProperty("samples", samples);
+      summary.addProperty("durationMs", TimeUnit.NANOSECONDS.toMillis(elapsed));
+      summary.addProperty("intervalMs", intervalMs);
+      summary.addProperty("overheadPct", Math.round(busyNanos * 10000.0 / elapsed) / 100.0);
+      summary.addProperty("pauseMs", samples > 0 ? Math.round(busyNanos * 100.0 / samples / 1_000_000) / 100.0 : 0);
+      summary.addProperty("maxPauseMs", Math.round(maxCost * 100.0 / 1_000_000) / 100.0);
+      summary.addProperty("nodes", nodes);
+      summary.addProperty("truncated", truncated);
+      return new Result(summary, chunks);
+    }
+
+    private void fold(Node node, StringBuilder path, int pathBytes, StringBuilder chunk, List<String> chunks, int chunkBytes) {
+      int mark = path.length();
+      if (mark > 0) {
+        path.append(';');
+        pathBytes++;
+      }
+      String label = labels.get(node.label);
+      path.append(label);
+      pathBytes += utf8Length(label);
+      if (node.self > 0) {
+        String count = Integer.toString(node.self);
+        int line = pathBytes + count.length() + 2;
+        if (chunkUsed > 0 && chunkUsed + line > chunkBytes) {
+          chunks.add(chunk.toString());
+          chunk.setLength(0);
+          chunkUsed = 0;
+        }
+        chunk.append(path).append(' ').append(count).append('\n');
+        chunkUsed += line;
+      }
+      for (int i = 0; i < node.size; i++) {
+        fold(node.children[i], path, pathBytes, chunk, chunks, chunkBytes);
+      }
+      path.setLength(mark);
+    }
+  }
+
+  private static final class Node {
+    private static final Node[] NONE = new Node[0];
+
+    final int label;
+    int self;
+    int[] labels = new int[0];
+    Node[] children = NONE;
+    int size;
+
+    Node(int label) {
+      this.label = label;
+    }
+
+    Node find(int label) {
+      for (int i = 0; i < size; i++) {
+        if (labels[i] == label) {
+          return children[i];
+        }
+      }
+      return null;
+    }
+
+    Node add(int label) {
+      if (size == children.length) {
+        int capacity = Math.max(2, size * 2);
+        labels = Arrays.copyOf(labels, capacity);
+        children = Arrays.copyOf(children, capacity);
+      }
+      Node node = new Node(label);
+      labels[size] = label;
+      children[size] = node;
+      size++;
+      return node;
+    }
+  }
+
+  private static final class Result {
+    private final JsonObject summary;
+    private final List<String> chunks;
+
+    Result(JsonObject summary, List<String> chunks) {
+      this.summary = summary;
+      this.chunks = chunks;
+    }
+
+    BridgeResponse chunk(int index) {
+      JsonObject data = summary.deepCopy();
+      data.addProperty("chunk", index);
+      data.addProperty("chunks", chunks.size());
+      data.addProperty("folded", chunks.get(index));
+      return BridgeResponse.success(data);
+    }
+  }
+}
@@ -0,0 +1,172 @@
+package com.uws.bridge.common;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+public final class SnapshotStore {
+  public static final String PLAYERS = "getPlayers";
+  public static final String SERVER_INFO = "getServerInfo";
+
+  private final int defaultMaxStaleMs;
+  private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+  private final Map<Object, Row> players = new LinkedHashMap<>();
+  private boolean playersDirty = true;
+  private int maxPlayers = -1;
+  private long sweep;
+  private volatile double tps = -1;
+  private volatile double mspt = -1;
+  private volatile int playerCount = -1;
+  private volatile int playerLimit = -1;
+  private volatile long tickSampledAt;
+
+  public SnapshotStore(int defaultMaxStaleMs) {
+    this.defaultMaxStaleMs = defaultMaxStaleMs;
+  }
+
+  public boolean isEnabled() {
+    return defaultMaxStaleMs > 0;
+  }
+
+  public void publish(String cmd, int stamp, Supplier<PayloadWriter> data) {
+    Snapshot current = snapshots.get(cmd);
+    String json = current != null && current.stamp == stamp
+        ? current.json
+        : EnvelopeWriter.encodePayload(data.get());
+    snapshots.put(cmd, new Snapshot(json, stamp, System.currentTimeMillis()));
+  }
+
+  public synchronized void updatePlayer(Object key, int stamp, Supplier<PayloadWriter> entry) {
+    Row row = players.get(key);
+    if (row == null || row.stamp != stamp) {
+      players.put(key, new Row(EnvelopeWriter.encodePayload(entry.get()), stamp, sweep));
+      playersDirty = true;
+    } else {
+      row.sweep = sweep;
+    }
+  }
+
+  public synchronized void removePlayer(Object key) {
+    if (players.remove(key) != null) {
+      playersDirty = true;
+    }
+  }
+
+  public synchronized void publishPlayers(int maxPlayers) {
+    if (!playersDirty && maxPlayers == this.maxPlayers && snapshots.containsKey(PLAYERS)) {
+      Snapshot current = snapshots.get(PLAYERS);
+      snapshots.put(PLAYERS, new Snapshot(current.json, current.stamp, System.currentTimeMillis()));
+      return;
+    }
+    this.maxPlayers = maxPlayers;
+    playersDirty = false;
+    Row[] rows = players.values().toArray(new Row[0]);
+    String json = EnvelopeWriter.encodePayload(out -> {
+      out.beginObject();
+      out.name("count").value(rows.length);
+      out.name("players").beginArray();
+      for (Row row : rows) {
+        out.jsonValue(row.json);
+      }
+      out.endArray();
+      out.name("maxPlayers").value(maxPlayers);
+      out.endObject();
+    });
+    snapshots.put(PLAYERS, new Snapshot(json, 0, System.currentTimeMillis()));
+  }
+
+  public synchronized void sweepPlayers(int maxPlayers) {
+    Iterator<Row> rows = players.values().iterator();
+    while (rows.hasNext()) {
+      if (rows.next().sweep != sweep) {
+        rows.remove();
+        playersDirty = true;
+      }
+    }
+    sweep++;
+    publishPlayers(maxPlayers);
+  }
+
+  public void sampleTick(double tps, double mspt, int playerCount, int playerLimit) {
+    this.tps = tps;
+    this.mspt = mspt;
+    this.playerCount = playerCount;
+    this.playerLimit = playerLimit;
+    this.tickSampledAt = System.currentTimeMillis();
+  }
+
+  public boolean hasTick(BridgeRequest request) {
+    return tickSampledAt > 0 && isFresh(tickSampledAt, maxStaleMs(request));
+  }
+
+  public double getTps() {
+    return tps;
+  }
+
+  public double getMspt() {
+    return mspt;
+  }
+
+  public int getPlayerCount() {
+    return playerCount;
+  }
+
+  public int getPlayerLimit() {
+    return playerLimit;
+  }
+
+  public CompletableFuture<BridgeResponse> serve(BridgeRequest request, Supplier<CompletableFuture<BridgeResponse>> fallback) {
+    Snapshot snapshot = snapshots.get(request.getCmd());
+    if (snapshot != null && isFresh(snapshot.takenAt, maxStaleMs(request))) {
+      return CompletableFuture.completedFuture(BridgeResponse.encoded(snapshot.json));
+    }
+    return fallback.get();
+  }
+
+  public void clear() {
+    snapshots.clear();
+    tickSampledAt = 0;
+  }
+
+  private long maxStaleMs(BridgeRequest request) {
+    JsonObject data = request != null ? request.getData() : null;
+    JsonElement hint = data != null ? data.get("maxStaleMs") : null;
+    if (hint != null && hint.isJsonPrimitive() && hint.getAsJsonPrimitive().isNumber()) {
+      return Math.max(0, hint.getAsLong());
+    }
+    return defaultMaxStaleMs;
+  }
+
+  private static boolean isFresh(long takenAt, long maxStaleMs) {
+    return maxStaleMs > 0 && System.currentTimeMillis() - takenAt <= maxStaleMs;
+  }
+
+  private static final class Snapshot {
+    final String json;
+    final int stamp;
+    final long takenAt;
+
+    Snapshot(String json, int stamp, long takenAt) {
+      this.json = json;
+      this.stamp = stamp;
+      this.takenAt = takenAt;
+    }
+  }
+
+  private static final class Row {
+    final String json;
+    final int stamp;
+    long sweep;
+
+    Row(String json, int stamp, long sweep) {
+      this.json = json;
+      this.stamp = stamp;
+      this.sweep = sweep;
+    }
+  }
+}
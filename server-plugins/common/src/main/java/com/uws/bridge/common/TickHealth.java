@@ -0,0 +1,108 @@
+package com.uws.bridge.common;
+
+import com.google.gson.JsonObject;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public final class TickHealth {
+  public enum Load {
+    HEALTHY(1, 0),
+    STRAINED(2, 2000),
+    OVERLOADED(4, 5000);
+
+    private final int pushStretch;
+    private final long retryAfterMs;
+
+    Load(int pushStretch, long retryAfterMs) {
+      this.pushStretch = pushStretch;
+      this.retryAfterMs = retryAfterMs;
+    }
+  }
+
+  private static final double RECOVERY_FACTOR = 0.9;
+
+  private final boolean enabled;
+  private final double strainedMspt;
+  private final double overloadedMspt;
+  private final Logger logger;
+  private final Map<String, AtomicLong> pushCounters = new ConcurrentHashMap<>();
+  private final LongAdder skippedPushes = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private volatile Load load = Load.HEALTHY;
+  private volatile double mspt;
+  private volatile long since = System.currentTimeMillis();
+
+  public TickHealth(BridgeConfig config, Logger logger) {
+    this.enabled = config.isLoadShedding();
+    this.strainedMspt = config.getStrainedMspt();
+    this.overloadedMspt = config.getOverloadedMspt();
+    this.logger = logger;
+  }
+
+  public void record(double mspt) {
+    this.mspt = mspt;
+    if (!enabled) {
+      return;
+    }
+    Load current = load;
+    Load next = mspt > overloadedMspt ? Load.OVERLOADED : mspt > strainedMspt ? Load.STRAINED : Load.HEALTHY;
+    if (next.ordinal() < current.ordinal()) {
+      if (current == Load.OVERLOADED && mspt >= overloadedMspt * RECOVERY_FACTOR) {
+        next = current;
+      } else if (next == Load.HEALTHY && mspt >= strainedMspt * RECOVERY_FACTOR) {
+        next = Load.STRAINED;
+      }
+    }
+    if (next != current) {
+      load = next;
+      since = System.currentTimeMillis();
+      Load reached = next;
+      Level logLevel = next.ordinal() > current.ordinal() ? Level.WARNING : Level.INFO;
+      logger.log(logLevel, () -> "Bridge load shedding: " + current + " -> " + reached
+          + " at " + Math.round(mspt * 100.0) / 100.0 + " mspt");
+    }
+  }
+
+  public Load getLoad() {
+    return load;
+  }
+
+  public boolean admits(MainThreadQueue.Lane lane) {
+    Load current = load;
+    boolean admitted = current == Load.HEALTHY
+        || lane == MainThreadQueue.Lane.URGENT
+        || (current == Load.STRAINED && lane == MainThreadQueue.Lane.NORMAL);
+    if (!admitted) {
+      rejected.increment();
+    }
+    return admitted;
+  }
+
+  public BridgeResponse busy() {
+    return BridgeResponse.busy(load.retryAfterMs, mspt);
+  }
+
+  public boolean admitPush(String topic) {
+    int stretch = load.pushStretch;
+    long count = pushCounters.computeIfAbsent(topic, unused -> new AtomicLong()).getAndIncrement();
+    if (stretch <= 1 || count % stretch == 0) {
+      return true;
+    }
+    skippedPushes.increment();
+    return false;
+  }
+
+  public JsonObject buildStats() {
+    JsonObject stats = new JsonObject();
+    stats.addProperty("level", load.name().toLowerCase());
+    stats.addProperty("mspt", Math.round(mspt * 100.0) / 100.0);
+    stats.addProperty("sinceMs", System.currentTimeMillis() - since);
+    stats.addProperty("rejected", rejected.sum());
+    stats.addProperty("skippedPushes", skippedPushes.sum());
+    return stats;
+  }
+}
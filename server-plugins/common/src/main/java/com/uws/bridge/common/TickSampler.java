@@ -0,0 +1,135 @@
+package com.uws.bridge.common;
+
+import com.google.gson.JsonObject;
+import java.util.Arrays;
+
+public final class TickSampler {
+  private static final int CAPACITY = 2048;
+  private static final int MASK = CAPACITY - 1;
+  private static final String[] WINDOW_NAMES = {"1s", "10s", "60s"};
+  private static final long[] WINDOW_NANOS = {1_000_000_000L, 10_000_000_000L, 60_000_000_000L};
+  private static final double[] PERCENTILES = {0.50, 0.95, 0.99};
+
+  private final long[] durations = new long[CAPACITY];
+  private final long[] endedAt = new long[CAPACITY];
+  private volatile long count;
+  private long tickStart;
+
+  public void tickStart() {
+    tickStart = System.nanoTime();
+  }
+
+  public void tickEnd() {
+    long start = tickStart;
+    if (start == 0) {
+      return;
+    }
+    long now = System.nanoTime();
+    tickStart = 0;
+    record(now - start, now);
+  }
+
+  public void record(long nanos, long endedAtNanos) {
+    long next = count;
+    int slot = (int) (next & MASK);
+    durations[slot] = nanos;
+    endedAt[slot] = endedAtNanos;
+    count = next + 1;
+  }
+
+  public double averageMillis(int ticks) {
+    long now = System.nanoTime();
+    long total = count;
+    int available = (int) Math.min(Math.min(total, CAPACITY - 1), ticks);
+    long widest = WINDOW_NANOS[WINDOW_NANOS.length - 1];
+    long sum = 0;
+    int taken = 0;
+    for (int i = 0; i < available; i++) {
+      int slot = (int) ((total - 1 - i) & MASK);
+      if (now - endedAt[slot] > widest) {
+        break;
+      }
+      sum += durations[slot];
+      taken++;
+    }
+    return taken > 0 ? sum / (double) taken / 1_000_000.0 : 0.0;
+  }
+
+  public PayloadWriter windows() {
+    double[][] stats = compute();
+    return out -> {
+      out.beginObject();
+      for (int i = 0; i < WINDOW_NAMES.length; i++) {
+        double[] window = stats[i];
+        out.name(WINDOW_NAMES[i]).beginObject();
+        out.name("ticks").value((long) window[0]);
+        out.name("p50").value(window[1]);
+        out.name("p95").value(window[2]);
+        out.name("p99").value(window[3]);
+        out.name("max").value(window[4]);
+        out.endObject();
+      }
+      out.endObject();
+    };
+  }
+
+  public JsonObject buildStats() {
+    double[][] stats = compute();
+    JsonObject result = new JsonObject();
+    for (int i = 0; i < WINDOW_NAMES.length; i++) {
+      double[] window = stats[i];
+      JsonObject entry = new JsonObject();
+      entry.addProperty("ticks", (long) window[0]);
+      entry.addProperty("p50", window[1]);
+      entry.addProperty("p95", window[2]);
+      entry.addProperty("p99", window[3]);
+      entry.addProperty("max", window[4]);
+      result.add(WINDOW_NAMES[i], entry);
+    }
+    return result;
+  }
+
+  private double[][] compute() {
+    long now = System.nanoTime();
+    long total = count;
+    int available = (int) Math.min(total, CAPACITY - 1);
+    long[] samples = new long[available];
+    long[] ages = new long[available];
+    int taken = 0;
+    long widest = WINDOW_NANOS[WINDOW_NANOS.length - 1];
+    for (int i = 0; i < available; i++) {
+      int slot = (int) ((total - 1 - i) & MASK);
+      long age = now - endedAt[slot];
+      if (age > widest) {
+        break;
+      }
+      samples[taken] = durations[slot];
+      ages[taken] = age;
+      taken++;
+    }
+    double[][] stats = new double[WINDOW_NANOS.length][];
+    int start = 0;
+    long[] sorted = new long[taken];
+    for (int w = 0; w < WINDOW_NANOS.length; w++) {
+      int end = start;
+      while (end < taken && ages[end] <= WINDOW_NANOS[w]) {
+        end++;
+      }
+      System.arraycopy(samples, 0, sorted, 0, end);
+      Arrays.sort(sorted, 0, end);
+      double[] window = new double[2 + PERCENTILES.length];
+      window[0] = end;
+      for (int p = 0; p < PERCENTILES.length; p++) {
+        window[p + 1] = end > 0 ? toMillis(sorted[(int) Math.ceil(PERCENTILES[p] * end) - 1]) : 0.0;
+      }
+      window[window.length - 1] = end > 0 ? toMillis(sorted[end - 1]) : 0.0;
+      stats[w] = window;
+      start = end;
+    }
+    return stats;
+  }
+
+  private static double toMillis(long nanos) {
+    return Math.round(nanos / 10_000.0) / 100.0;
+  }
+}
@@ -0,0 +1,51 @@
+package com.uws.bridge.common;
+
+import java.util.concurrent.TimeUnit;
+
+public final class TokenBucket {
+  private final double capacity;
+  private final double tokensPerNano;
+  private double tokens;
+  private long lastRefill;
+
+  public TokenBucket(int ratePerSecond) {
+    this(ratePerSecond, ratePerSecond);
+  }
+
+  public TokenBucket(int ratePerSecond, int burst) {
+    this.capacity = ratePerSecond > 0 ? Math.max(ratePerSecond, burst) : 0;
+    this.tokensPerNano = (double) Math.max(ratePerSecond, 0) / TimeUnit.SECONDS.toNanos(1);
+    this.tokens = capacity;
+    this.lastRefill = System.nanoTime();
+  }
+
+  public synchronized boolean tryAcquire(int permits) {
+    if (capacity <= 0) {
+      return true;
+    }
+    refill();
+    if (tokens < permits) {
+      return false;
+    }
+    tokens -= permits;
+    return true;
+  }
+
+  public synchronized long millisUntilAvailable(int permits) {
+    if (capacity <= 0) {
+      return 0;
+    }
+    refill();
+    double missing = Math.min(permits, capacity) - tokens;
+    if (missing <= 0) {
+      return 0;
+    }
+    return TimeUnit.NANOSECONDS.toMillis((long) Math.ceil(missing / tokensPerNano)) + 1;
+  }
+
+  private void refill() {
+    long now = System.nanoTime();
+    tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+    lastRefill = now;
+  }
+}
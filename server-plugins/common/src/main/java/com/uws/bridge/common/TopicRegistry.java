@@ -0,0 +1,92 @@
+package com.uws.bridge.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class TopicRegistry {
+  private final Logger logger;
+  private final Map<String, Integer> subscribers = new ConcurrentHashMap<>();
+  private final Map<String, List<Binding>> bindings = new ConcurrentHashMap<>();
+
+  private static class Binding {
+    final Runnable onActive;
+    final Runnable onIdle;
+
+    Binding(Runnable onActive, Runnable onIdle) {
+      this.onActive = onActive;
+      this.onIdle = onIdle;
+    }
+  }
+
+  public TopicRegistry(Logger logger) {
+    this.logger = logger;
+  }
+
+  public synchronized void bind(String topic, Runnable onActive, Runnable onIdle) {
+    Binding binding = new Binding(onActive, onIdle);
+    bindings.computeIfAbsent(topic, key -> new ArrayList<>()).add(binding);
+    if (isActive(topic)) {
+      run(topic, binding.onActive);
+    }
+  }
+
+  public synchronized void acquire(String topic) {
+    if (subscribers.merge(topic, 1, Integer::sum) == 1) {
+      fire(topic, true);
+    }
+  }
+
+  public synchronized void release(String topic) {
+    Integer count = subscribers.get(topic);
+    if (count == null) {
+      return;
+    }
+    if (count > 1) {
+      subscribers.put(topic, count - 1);
+      return;
+    }
+    subscribers.remove(topic);
+    fire(topic, false);
+  }
+
+  public synchronized void clear() {
+    for (String topic : new ArrayList<>(subscribers.keySet())) {
+      subscribers.remove(topic);
+      fire(topic, false);
+    }
+  }
+
+  public boolean isActive(String topic) {
+    return subscribers.containsKey(topic);
+  }
+
+  public Set<String> activeTopics() {
+    return subscribers.keySet();
+  }
+
+  private void fire(String topic, boolean active) {
+    List<Binding> bound = bindings.get(topic);
+    if (bound == null) {
+      return;
+    }
+    for (Binding binding : bound) {
+      run(topic, active ? binding.onActive : binding.onIdle);
+    }
+  }
+
+  private void run(String topic, Runnable callback) {
+    if (callback == null) {
+      return;
+    }
+    try {
+      callback.run();
+    } catch (RuntimeException ex) {
+      logger.log(Level.WARNING, "Topic hook failed for " + topic, ex);
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package com.uws.bridge.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class CborRoundTripTest {
+  @Test
+  void treeSurvivesRoundTrip() throws IOException {
+    JsonObject tree = new JsonObject();
+    tree.addProperty("name", "Steve \u00e9\u4e16\ud83d\ude00");
+    tree.addProperty("tps", 19.5);
+    tree.addProperty("mspt", 0.1);
+    tree.addProperty("count", -42);
+    tree.addProperty("time", 1_700_000_000_000L);
+    tree.addProperty("online", true);
+    JsonArray items = new JsonArray();
+    items.add(1);
+    items.add("two");
+    items.add(JsonNull.INSTANCE);
+    items.add(new JsonObject());
+    tree.add("items", items);
+
+    assertEquals(tree, CborReader.read(write(EnvelopeWriter.tree(tree))));
+  }
+
+  @Test
+  void rawJsonIsTranscoded() throws IOException {
+    String json = "{\"players\":[{\"uuid\":\"u-1\",\"ping\":35}],\"maxPlayers\":20,\"motd\":\"hi\"}";
+
+    assertEquals(JsonParser.parseString(json), CborReader.read(write(EnvelopeWriter.raw(json))));
+  }
+
+  @Test
+  void knownKeysAreWrittenAsCompactIds() throws IOException {
+    ByteBuffer known = write(out -> out.beginObject().name("tps").value(true).endObject());
+    ByteBuffer free = write(out -> out.beginObject().name("world").value(true).endObject());
+
+    assertEquals(CompactKeys.idOf("tps"), known.get(1));
+    assertEquals(0x65, free.get(1) & 0xff);
+  }
+
+  @Test
+  void unknownCompactIdFallsBackToItsNumber() {
+    ByteBuffer frame = ByteBuffer.wrap(new byte[] {(byte) 0xa1, 0x18, 0x63, (byte) 0xf5});
+
+    JsonObject object = CborReader.read(frame).getAsJsonObject();
+
+    assertNull(CompactKeys.nameOf(99));
+    assertEquals(true, object.get("99").getAsBoolean());
+  }
+
+  @Test
+  void binaryPushDecodesAsEnvelope() {
+    ByteBuffer frame = EnvelopeWriter.encodePushBinary("events.chat", "id-1", 3, out -> out.beginObject().name("message").value("hi").endObject());
+
+    BridgeEnvelope envelope = BridgeEnvelope.decode(frame);
+    JsonObject object = CborReader.read(frame).getAsJsonObject();
+
+    assertEquals("events.chat", envelope.getCmd());
+    assertEquals("push", envelope.getMode());
+    assertEquals("id-1", envelope.getRequestId());
+    assertEquals("hi", envelope.getData().get("message").getAsString());
+    assertEquals(3, object.get("seq").getAsLong());
+    assertEquals(EnvelopeWriter.SCHEMA, object.get("schema").getAsString());
+  }
+
+  @Test
+  void datalessCommandDropsData() {
+    ByteBuffer frame = EnvelopeWriter.encodeResponseBinary("id-2", "ping", "success", out -> out.beginObject().name("x").value(1).endObject(), null);
+
+    assertNull(BridgeEnvelope.decode(frame).getData());
+  }
+
+  @Test
+  void binaryFramesAreSmallerThanJson() throws IOException {
+    PayloadWriter player = Payloads.playerEvent("ev-1", 1792241065461L, "join", "Steve", "069a79f4-44e9-4726-a5be-fca90e38aaf5", "10.0.0.5");
+    PayloadWriter tick = Payloads.metricsTick(19.98, 12.34, 17, 100);
+    String control = "{\"cmd\":\"control\",\"requestId\":\"abc\",\"data\":{\"action\":\"kickPlayer\"}}";
+
+    assertTrue(EnvelopeWriter.encodePushBinary("events.player", "id-1", 42, player).remaining()
+        < EnvelopeWriter.encodePush("events.player", "id-1", 42, player).getBytes(StandardCharsets.UTF_8).length);
+    assertTrue(EnvelopeWriter.encodePushBinary("metrics.tps", "id-1", 42, tick).remaining()
+        < EnvelopeWriter.encodePush("metrics.tps", "id-1", 42, tick).getBytes(StandardCharsets.UTF_8).length);
+    assertTrue(write(EnvelopeWriter.raw(control)).remaining() < control.getBytes(StandardCharsets.UTF_8).length);
+  }
+
+  @Test
+  void truncatedFrameIsRejected() throws IOException {
+    ByteBuffer frame = write(out -> out.beginObject().name("message").value("hello").endObject());
+    frame.limit(frame.limit() - 3);
+
+    assertThrows(JsonParseException.class, () -> CborReader.read(frame));
+  }
+
+  @Test
+  void oversizedLengthIsRejected() {
+    ByteBuffer frame = ByteBuffer.wrap(new byte[] {0x7a, 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff, 'a'});
+
+    assertThrows(JsonParseException.class, () -> CborReader.read(frame));
+  }
+
+  private static ByteBuffer write(PayloadWriter payload) throws IOException {
+    CborWriter out = new CborWriter();
+    payload.write(out);
+    return out.toByteBuffer();
+  }
+}
@@ -0,0 +1,97 @@
+package com.uws.bridge.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+class EnvelopeWriterTest {
+  @Test
+  void pushCarriesEnvelopeFields() {
+    JsonObject push = parse(EnvelopeWriter.encodePush("events.chat", "id-1", 7, out -> out.beginObject().name("message").value("hi").endObject()));
+
+    assertEquals(EnvelopeWriter.SCHEMA, push.get("schema").getAsString());
+    assertEquals("push", push.get("mode").getAsString());
+    assertEquals("events.chat", push.get("cmd").getAsString());
+    assertEquals("id-1", push.get("requestId").getAsString());
+    assertEquals(7, push.get("seq").getAsLong());
+    assertEquals("hi", push.getAsJsonObject("data").get("message").getAsString());
+  }
+
+  @Test
+  void responseOmitsMissingDataAndMessage() {
+    JsonObject response = parse(EnvelopeWriter.encodeResponse("id-2", "ping", "success", null, null));
+
+    assertEquals("success", response.get("status").getAsString());
+    assertFalse(response.has("data"));
+    assertFalse(response.has("msg"));
+  }
+
+  @Test
+  void reusedBufferDoesNotLeakEarlierFrames() {
+    String large = "x".repeat(8192);
+    EnvelopeWriter.encodePayload(out -> out.value(large));
+
+    assertEquals("\"small\"", EnvelopeWriter.encodePayload(out -> out.value("small")));
+  }
+
+  @Test
+  void failedWriteLeavesPoolClean() {
+    assertThrows(JsonIOException.class, () -> EnvelopeWriter.encodePayload(out -> {
+      out.beginObject().name("partial").value("half written");
+      throw new IOException("boom");
+    }));
+
+    assertEquals("{\"ok\":true}", EnvelopeWriter.encodePayload(out -> out.beginObject().name("ok").value(true).endObject()));
+  }
+
+  @Test
+  void rawAndTreePayloadsEmbedVerbatim() {
+    JsonObject tree = new JsonObject();
+    tree.addProperty("a", 1);
+
+    assertEquals("{\"a\":1}", EnvelopeWriter.encodePayload(EnvelopeWriter.tree(tree)));
+    assertEquals("{\"b\":[1,2]}", EnvelopeWriter.encodePayload(EnvelopeWriter.raw("{\"b\":[1,2]}")));
+  }
+
+  @Test
+  void concurrentEncodesStayIsolated() throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Boolean>> results = new ArrayList<>();
+      for (int task = 0; task < 8; task++) {
+        String marker = "task-" + task;
+        results.add(pool.submit(() -> {
+          for (int i = 0; i < 2000; i++) {
+            String expected = "\"" + marker + "-" + i + "\"";
+            String value = marker + "-" + i;
+            if (!expected.equals(EnvelopeWriter.encodePayload(out -> out.value(value)))) {
+              return false;
+            }
+          }
+          return true;
+        }));
+      }
+      for (Future<Boolean> result : results) {
+        assertTrue(result.get());
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private static JsonObject parse(String json) {
+    return JsonParser.parseString(json).getAsJsonObject();
+  }
+}
@@ -0,0 +1,137 @@
+package com.uws.bridge.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EventOutboxTest {
+  private static final String TOPIC = "chat.ingame";
+  private static final BridgeConfig CONFIG =
+      new BridgeConfig("127.0.0.1", 0, "tok", "srv", "Java", "Test", "1", Duration.ofSeconds(60));
+  private static final Logger LOGGER = Logger.getLogger(EventOutboxTest.class.getName());
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void drainReturnsRecordsInOrder() throws IOException {
+    EventOutbox outbox = open("epoch-1");
+    appendMessages(outbox, 1, 3);
+
+    List<EventOutbox.Record> records = drainAll(outbox);
+    outbox.close();
+
+    assertEquals(List.of(1L, 2L, 3L), records.stream().map(EventOutbox.Record::getSeq).collect(Collectors.toList()));
+    assertEquals("events.chat", records.get(0).getCmd());
+    assertEquals("epoch-1", records.get(0).getEpoch());
+    assertEquals("{\"message\":\"m2\"}", records.get(1).getData());
+    assertTrue(segmentFiles().isEmpty());
+  }
+
+  @Test
+  void partialDrainKeepsOnlyUndeliveredRecords() throws IOException {
+    EventOutbox outbox = open("epoch-1");
+    appendMessages(outbox, 1, 5);
+
+    int[] accepted = {0};
+    assertEquals(2, outbox.drain(TOPIC, record -> accepted[0]++ < 2));
+    List<EventOutbox.Record> rest = drainAll(outbox);
+    outbox.close();
+
+    assertEquals(List.of(3L, 4L, 5L), rest.stream().map(EventOutbox.Record::getSeq).collect(Collectors.toList()));
+  }
+
+  @Test
+  void recordsSurviveRestart() throws IOException {
+    EventOutbox first = open("epoch-1");
+    appendMessages(first, 1, 2);
+    first.close();
+
+    EventOutbox second = open("epoch-2");
+    List<EventOutbox.Record> records = drainAll(second);
+    second.close();
+
+    assertEquals(2, records.size());
+    assertEquals("epoch-1", records.get(0).getEpoch());
+  }
+
+  @Test
+  void tornTailIsIgnored() throws IOException {
+    EventOutbox first = open("epoch-1");
+    appendMessages(first, 1, 3);
+    first.close();
+    Path segment = segmentFiles().get(0);
+    byte[] torn = {0, 0, 0, 100, 1, 2, 3, 4, 5, 6};
+    Files.write(segment, torn, StandardOpenOption.APPEND);
+
+    EventOutbox second = open("epoch-1");
+    List<EventOutbox.Record> records = drainAll(second);
+    second.close();
+
+    assertEquals(3, records.size());
+  }
+
+  @Test
+  void corruptedRecordFailsCrcAndEndsTheSegment() throws IOException {
+    EventOutbox first = open("epoch-1");
+    appendMessages(first, 1, 3);
+    first.close();
+    Path segment = segmentFiles().get(0);
+    byte[] bytes = Files.readAllBytes(segment);
+    bytes[bytes.length - 2] ^= 0x20;
+    Files.write(segment, bytes);
+
+    EventOutbox second = open("epoch-1");
+    List<EventOutbox.Record> records = drainAll(second);
+    second.close();
+
+    assertEquals(List.of(1L, 2L), records.stream().map(EventOutbox.Record::getSeq).collect(Collectors.toList()));
+  }
+
+  @Test
+  void discardDropsRecordedSegments() throws IOException {
+    EventOutbox outbox = open("epoch-1");
+    appendMessages(outbox, 1, 3);
+
+    outbox.discard(TOPIC);
+    List<EventOutbox.Record> records = drainAll(outbox);
+    outbox.close();
+
+    assertTrue(records.isEmpty());
+  }
+
+  private EventOutbox open(String epoch) throws IOException {
+    return new EventOutbox(directory, epoch, CONFIG, LOGGER);
+  }
+
+  private static void appendMessages(EventOutbox outbox, int from, int to) {
+    for (int i = from; i <= to; i++) {
+      String message = "m" + i;
+      outbox.append(TOPIC, "events.chat", i, out -> out.beginObject().name("message").value(message).endObject());
+    }
+  }
+
+  private static List<EventOutbox.Record> drainAll(EventOutbox outbox) {
+    List<EventOutbox.Record> records = new ArrayList<>();
+    outbox.drain(TOPIC, records::add);
+    return records;
+  }
+
+  private List<Path> segmentFiles() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      return files.filter(path -> path.toString().endsWith(".seg")).sorted().collect(Collectors.toList());
+    }
+  }
+}
@@ -0,0 +1,193 @@
+package com.uws.bridge.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketAdapter;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.enums.ReadyState;
+import org.java_websocket.handshake.Handshakedata;
+import org.junit.jupiter.api.Test;
+
+class OutboundBudgetTest {
+  @Test
+  void smallQueueIsWithinBudget() throws Exception {
+    WebSocketImpl conn = openSocket();
+    queue(conn, 3, 100);
+
+    assertEquals(OutboundBudget.State.WITHIN, new OutboundBudget(4, 1024, 1000).check(conn));
+  }
+
+  @Test
+  void tooManyFramesIsOver() throws Exception {
+    WebSocketImpl conn = openSocket();
+    queue(conn, 5, 1);
+
+    assertEquals(OutboundBudget.State.OVER, new OutboundBudget(4, 0, 1000).check(conn));
+  }
+
+  @Test
+  void tooManyBytesIsOver() throws Exception {
+    WebSocketImpl conn = openSocket();
+    queue(conn, 2, 600);
+
+    assertEquals(OutboundBudget.State.OVER, new OutboundBudget(0, 1024, 1000).check(conn));
+  }
+
+  @Test
+  void staysOverPastGraceIsExhausted() throws Exception {
+    WebSocketImpl conn = openSocket();
+    queue(conn, 5, 1);
+    OutboundBudget budget = new OutboundBudget(4, 0, 20);
+
+    assertEquals(OutboundBudget.State.OVER, budget.check(conn));
+    Thread.sleep(40);
+
+    assertEquals(OutboundBudget.State.EXHAUSTED, budget.check(conn));
+  }
+
+  @Test
+  void drainingRestartsGracePeriod() throws Exception {
+    WebSocketImpl conn = openSocket();
+    OutboundBudget budget = new OutboundBudget(4, 0, 20);
+    queue(conn, 5, 1);
+    budget.check(conn);
+    Thread.sleep(40);
+
+    conn.outQueue.clear();
+    assertEquals(OutboundBudget.State.WITHIN, budget.check(conn));
+    queue(conn, 5, 1);
+
+    assertEquals(OutboundBudget.State.OVER, budget.check(conn));
+  }
+
+  @Test
+  void zeroGraceNeverExhausts() throws Exception {
+    WebSocketImpl conn = openSocket();
+    queue(conn, 5, 1);
+    OutboundBudget budget = new OutboundBudget(4, 0, 0);
+    budget.check(conn);
+    Thread.sleep(20);
+
+    assertEquals(OutboundBudget.State.OVER, budget.check(conn));
+  }
+
+  @Test
+  void coalescingKeepsLatestFramePerTopic() throws Exception {
+    WebSocketImpl conn = openSocket();
+    OutboundBudget budget = new OutboundBudget(4, 0, 0);
+
+    budget.coalesce("metrics.tps", "{\"tps\":19}");
+    budget.coalesce("metrics.tps", "{\"tps\":20}");
+    budget.coalesce("heartbeat", ByteBuffer.wrap(new byte[] {1, 2, 3}));
+    budget.flush(conn);
+
+    assertEquals(1, budget.getCoalescedFrames());
+    assertEquals(2, conn.outQueue.size());
+    budget.flush(conn);
+    assertEquals(2, conn.outQueue.size());
+  }
+
+  @Test
+  void bytesAreMeasuredWhenFramesAreOver() throws Exception {
+    WebSocketImpl conn = openSocket();
+    OutboundBudget budget = new OutboundBudget(4, 0, 0);
+    queue(conn, 5, 600);
+
+    budget.check(conn);
+
+    JsonObject stats = stats(budget);
+    assertEquals(5, stats.get("frames").getAsInt());
+    assertEquals(3000, stats.get("bytes").getAsLong());
+  }
+
+  @Test
+  void emptyQueueResetsBytes() throws Exception {
+    WebSocketImpl conn = openSocket();
+    OutboundBudget budget = new OutboundBudget(0, 1024, 0);
+    queue(conn, 2, 600);
+    budget.check(conn);
+
+    conn.outQueue.clear();
+    budget.check(conn);
+    queue(conn, 1, 100);
+
+    assertEquals(OutboundBudget.State.WITHIN, budget.check(conn));
+    assertEquals(100, stats(budget).get("bytes").getAsLong());
+  }
+
+  @Test
+  void dropsAreCounted() {
+    OutboundBudget budget = new OutboundBudget(4, 0, 0);
+
+    budget.drop();
+    budget.drop();
+
+    assertEquals(2, budget.getDroppedFrames());
+  }
+
+  private static WebSocketImpl openSocket() throws ReflectiveOperationException {
+    WebSocketImpl conn = new WebSocketImpl(new Listener(), new Draft_6455());
+    Field state = WebSocketImpl.class.getDeclaredField("readyState");
+    state.setAccessible(true);
+    state.set(conn, ReadyState.OPEN);
+    return conn;
+  }
+
+  private static JsonObject stats(OutboundBudget budget) throws IOException {
+    StringWriter buffer = new StringWriter();
+    budget.writeStats(new JsonWriter(buffer));
+    return JsonParser.parseString(buffer.toString()).getAsJsonObject();
+  }
+
+  private static void queue(WebSocketImpl conn, int frames, int bytes) {
+    for (int i = 0; i < frames; i++) {
+      conn.outQueue.add(ByteBuffer.allocate(bytes));
+    }
+  }
+
+  private static final class Listener extends WebSocketAdapter {
+    @Override
+    public void onWebsocketMessage(WebSocket conn, String message) {}
+
+    @Override
+    public void onWebsocketMessage(WebSocket conn, ByteBuffer blob) {}
+
+    @Override
+    public void onWebsocketOpen(WebSocket conn, Handshakedata handshake) {}
+
+    @Override
+    public void onWebsocketClose(WebSocket ws, int code, String reason, boolean remote) {}
+
+    @Override
+    public void onWebsocketClosing(WebSocket ws, int code, String reason, boolean remote) {}
+
+    @Override
+    public void onWebsocketCloseInitiated(WebSocket ws, int code, String reason) {}
+
+    @Override
+    public void onWebsocketError(WebSocket conn, Exception ex) {}
+
+    @Override
+    public void onWriteDemand(WebSocket conn) {}
+
+    @Override
+    public InetSocketAddress getLocalSocketAddress(WebSocket conn) {
+      return null;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteSocketAddress(WebSocket conn) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package com.uws.bridge.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+class ReplayRingTest {
+  @Test
+  void sinceReturnsEntriesAfterSeq() {
+    ReplayRing ring = ringWith(4, 3);
+
+    assertEquals(List.of(2L, 3L), seqs(ring.since(1)));
+    assertEquals(List.of(), seqs(ring.since(3)));
+  }
+
+  @Test
+  void wrappedRingKeepsNewestEntries() {
+    ReplayRing ring = ringWith(4, 6);
+
+    assertEquals(3, ring.getOldestSeq());
+    assertEquals(List.of(3L, 4L, 5L, 6L), seqs(ring.since(0)));
+    assertEquals(List.of(5L, 6L), seqs(ring.since(4)));
+  }
+
+  @Test
+  void gapIsTheRangeBeforeOldest() {
+    ReplayRing ring = ringWith(4, 6);
+    long resumeFrom = 0;
+
+    long missedFrom = resumeFrom + 1;
+    long missedTo = ring.getOldestSeq() - 1;
+
+    assertEquals(1, missedFrom);
+    assertEquals(2, missedTo);
+    assertEquals(3, ring.since(resumeFrom).get(0).getSeq());
+  }
+
+  @Test
+  void zeroCapacityOnlyCounts() {
+    ReplayRing ring = ringWith(0, 3);
+
+    assertEquals(3, ring.getLastSeq());
+    assertTrue(ring.since(0).isEmpty());
+  }
+
+  @Test
+  void idleBurnsOneSeqOnNextUse() {
+    ReplayRing ring = ringWith(8, 4);
+
+    ring.markIdle();
+
+    assertEquals(5, ring.getLastSeq());
+    assertEquals(5, ring.getUnrecordedSeq());
+    assertEquals(6, ring.append("events.chat", null));
+    assertEquals(List.of(3L, 4L, 6L), seqs(ring.since(2)));
+  }
+
+  @Test
+  void idleMarkIsSettledOnce() {
+    ReplayRing ring = ringWith(8, 2);
+
+    ring.markIdle();
+    ring.markIdle();
+
+    assertEquals(4, ring.append("events.chat", null));
+    assertEquals(5, ring.append("events.chat", null));
+    assertEquals(3, ring.getUnrecordedSeq());
+  }
+
+  @Test
+  void neverIdledReportsNoUnrecordedSeq() {
+    assertEquals(0, ringWith(4, 3).getUnrecordedSeq());
+  }
+
+  private static ReplayRing ringWith(int capacity, int appends) {
+    ReplayRing ring = new ReplayRing(capacity);
+    for (int i = 0; i < appends; i++) {
+      ring.append("events.chat", null);
+    }
+    return ring;
+  }
+
+  private static List<Long> seqs(List<ReplayRing.Entry> entries) {
+    return entries.stream().map(ReplayRing.Entry::getSeq).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,67 @@
+package com.uws.bridge.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+class SnapshotStoreTest {
+  private static final String LIVE = "live";
+
+  @Test
+  void topLevelMaxStaleZeroSkipsSnapshot() {
+    SnapshotStore store = storeWithPlayers();
+    AtomicBoolean fellBack = new AtomicBoolean();
+
+    BridgeResponse response = serve(store, "{\"cmd\":\"getPlayers\",\"requestId\":\"1\",\"data\":{\"maxStaleMs\":0}}", fellBack);
+
+    assertTrue(fellBack.get());
+    assertEquals(LIVE, response.getMessage());
+  }
+
+  @Test
+  void hintIsReadWhenDataPrecedesCmd() {
+    SnapshotStore store = storeWithPlayers();
+    AtomicBoolean fellBack = new AtomicBoolean();
+
+    serve(store, "{\"data\":{\"maxStaleMs\":0},\"cmd\":\"getPlayers\",\"requestId\":\"1\"}", fellBack);
+
+    assertTrue(fellBack.get());
+  }
+
+  @Test
+  void requestWithoutHintUsesSnapshot() {
+    SnapshotStore store = storeWithPlayers();
+    AtomicBoolean fellBack = new AtomicBoolean();
+
+    BridgeResponse response = serve(store, "{\"cmd\":\"getPlayers\",\"requestId\":\"1\"}", fellBack);
+
+    assertFalse(fellBack.get());
+    assertEquals("{\"count\":3}", response.getEncodedData());
+  }
+
+  @Test
+  void pingStillSkipsData() {
+    BridgeEnvelope envelope = BridgeEnvelope.decode("{\"cmd\":\"ping\",\"data\":{\"maxStaleMs\":0}}");
+
+    assertEquals(null, envelope.getData());
+  }
+
+  private static SnapshotStore storeWithPlayers() {
+    SnapshotStore store = new SnapshotStore(60_000);
+    store.publish(SnapshotStore.PLAYERS, 1, () -> out -> out.beginObject().name("count").value(3).endObject());
+    return store;
+  }
+
+  private static BridgeResponse serve(SnapshotStore store, String frame, AtomicBoolean fellBack) {
+    BridgeEnvelope envelope = BridgeEnvelope.decode(frame);
+    BridgeRequest request = new BridgeRequest(envelope.getCmd(), "request", envelope.getRequestId(), envelope.getData());
+    return store.serve(request, () -> {
+      fellBack.set(true);
+      return CompletableFuture.completedFuture(BridgeResponse.failure(LIVE));
+    }).join();
+  }
+}
@@ -0,0 +1,114 @@
+package com.uws.bridge.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.google.gson.JsonObject;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class TickSamplerTest {
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Test
+  void emptySamplerReportsZeroes() {
+    JsonObject window = new TickSampler().buildStats().getAsJsonObject("1s");
+
+    assertEquals(0, window.get("ticks").getAsLong());
+    assertEquals(0.0, window.get("p99").getAsDouble());
+    assertEquals(0.0, window.get("max").getAsDouble());
+  }
+
+  @Test
+  void percentilesUseNearestRank() {
+    TickSampler sampler = new TickSampler();
+    long now = System.nanoTime();
+    for (int i = 100; i >= 1; i--) {
+      sampler.record(i * MS, now);
+    }
+
+    JsonObject window = sampler.buildStats().getAsJsonObject("1s");
+
+    assertEquals(100, window.get("ticks").getAsLong());
+    assertEquals(50.0, window.get("p50").getAsDouble());
+    assertEquals(95.0, window.get("p95").getAsDouble());
+    assertEquals(99.0, window.get("p99").getAsDouble());
+    assertEquals(100.0, window.get("max").getAsDouble());
+  }
+
+  @Test
+  void windowsOnlyCountTheirOwnAge() {
+    TickSampler sampler = new TickSampler();
+    long now = System.nanoTime();
+    for (int i = 0; i < 4; i++) {
+      sampler.record(80 * MS, now - TimeUnit.SECONDS.toNanos(30));
+    }
+    for (int i = 0; i < 10; i++) {
+      sampler.record(40 * MS, now - TimeUnit.SECONDS.toNanos(5));
+    }
+    for (int i = 0; i < 5; i++) {
+      sampler.record(10 * MS, now);
+    }
+
+    JsonObject stats = sampler.buildStats();
+
+    assertEquals(5, stats.getAsJsonObject("1s").get("ticks").getAsLong());
+    assertEquals(10.0, stats.getAsJsonObject("1s").get("max").getAsDouble());
+    assertEquals(15, stats.getAsJsonObject("10s").get("ticks").getAsLong());
+    assertEquals(40.0, stats.getAsJsonObject("10s").get("p95").getAsDouble());
+    assertEquals(19, stats.getAsJsonObject("60s").get("ticks").getAsLong());
+    assertEquals(80.0, stats.getAsJsonObject("60s").get("max").getAsDouble());
+  }
+
+  @Test
+  void ticksOlderThanTheWidestWindowAreIgnored() {
+    TickSampler sampler = new TickSampler();
+    long now = System.nanoTime();
+    sampler.record(500 * MS, now - TimeUnit.SECONDS.toNanos(61));
+    sampler.record(20 * MS, now);
+
+    JsonObject window = sampler.buildStats().getAsJsonObject("60s");
+
+    assertEquals(1, window.get("ticks").getAsLong());
+    assertEquals(20.0, window.get("max").getAsDouble());
+  }
+
+  @Test
+  void ringKeepsTheMostRecentTicks() {
+    TickSampler sampler = new TickSampler();
+    long now = System.nanoTime();
+    for (int i = 0; i < 5000; i++) {
+      sampler.record((i < 3500 ? 90 : 10) * MS, now);
+    }
+
+    JsonObject window = sampler.buildStats().getAsJsonObject("1s");
+
+    assertEquals(2047, window.get("ticks").getAsLong());
+    assertEquals(90.0, window.get("max").getAsDouble());
+    assertEquals(10.0, window.get("p50").getAsDouble());
+  }
+
+  @Test
+  void averageCoversTheMostRecentTicks() {
+    TickSampler sampler = new TickSampler();
+    long now = System.nanoTime();
+    sampler.record(500 * MS, now - TimeUnit.SECONDS.toNanos(61));
+    sampler.record(90 * MS, now);
+    sampler.record(30 * MS, now);
+    sampler.record(60 * MS, now);
+
+    assertEquals(45.0, sampler.averageMillis(2));
+    assertEquals(60.0, sampler.averageMillis(100));
+    assertEquals(0.0, new TickSampler().averageMillis(100));
+  }
+
+  @Test
+  void tickEndWithoutStartRecordsNothing() {
+    TickSampler sampler = new TickSampler();
+
+    sampler.tickEnd();
+    sampler.tickStart();
+    sampler.tickEnd();
+
+    assertEquals(1, sampler.buildStats().getAsJsonObject("1s").get("ticks").getAsLong());
+  }
+}
@@ -0,0 +1,81 @@
+package com.uws.bridge.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class TokenBucketTest {
+  @Test
+  void burstAboveRateFitsAFullBatch() {
+    TokenBucket bucket = new TokenBucket(1, 64);
+
+    assertTrue(bucket.tryAcquire(64));
+    assertFalse(bucket.tryAcquire(1));
+  }
+
+  @Test
+  void burstNeverShrinksBelowRate() {
+    TokenBucket bucket = new TokenBucket(20, 5);
+
+    assertTrue(bucket.tryAcquire(20));
+  }
+
+  @Test
+  void refusedRequestTakesNoTokens() {
+    TokenBucket bucket = new TokenBucket(1, 10);
+
+    assertFalse(bucket.tryAcquire(11));
+    assertTrue(bucket.tryAcquire(10));
+  }
+
+  @Test
+  void refillsAtRate() throws InterruptedException {
+    TokenBucket bucket = new TokenBucket(1000, 1000);
+    assertTrue(bucket.tryAcquire(1000));
+    assertFalse(bucket.tryAcquire(50));
+
+    Thread.sleep(100);
+
+    assertTrue(bucket.tryAcquire(50));
+  }
+
+  @Test
+  void refillIsCappedAtBurst() throws InterruptedException {
+    TokenBucket bucket = new TokenBucket(1000, 10);
+
+    Thread.sleep(50);
+
+    assertFalse(bucket.tryAcquire(1001));
+    assertTrue(bucket.tryAcquire(1000));
+  }
+
+  @Test
+  void waitCoversTheMissingTokens() {
+    TokenBucket bucket = new TokenBucket(10, 64);
+    assertTrue(bucket.tryAcquire(64));
+
+    long wait = bucket.millisUntilAvailable(10);
+
+    assertTrue(wait > 900 && wait <= 1001, "wait " + wait);
+  }
+
+  @Test
+  void waitForOversizedRequestIsBoundedByCapacity() {
+    TokenBucket bucket = new TokenBucket(10, 20);
+    assertTrue(bucket.tryAcquire(20));
+
+    long wait = bucket.millisUntilAvailable(500);
+
+    assertTrue(wait > 1900 && wait <= 2001, "wait " + wait);
+  }
+
+  @Test
+  void zeroRateDisablesLimiting() {
+    TokenBucket bucket = new TokenBucket(0, 64);
+
+    assertTrue(bucket.tryAcquire(1_000_000));
+    assertEquals(0, bucket.millisUntilAvailable(1_000_000));
+  }
+}
@@ -31,6 +31,9 @@ public final class FabricBridgeConfig {
     dirty |= setDefault(props, "token", "change-me");
     dirty |= setDefault(props, "serverId", server.getServerModName().toLowerCase() + "-main");
     dirty |= setDefault(props, "heartbeatSeconds", "30");
+    dirty |= setDefault(props, "maxBatch", "64");
+    dirty |= setDefault(props, "rateQps", "20");
+    dirty |= setDefault(props, "timeoutMs", "5000");
 
     if (dirty) {
       try {
@@ -48,7 +51,9 @@ public final class FabricBridgeConfig {
     String serverId = props.getProperty("serverId", "fabric-main");
     int heartbeat = Integer.parseInt(props.getProperty("heartbeatSeconds", "30"));
 
-    return new BridgeConfig(bind, port, token, serverId, "Java", "Fabric", server.getServerVersion(), Duration.ofSeconds(heartbeat));
+    return new BridgeConfig(bind, port, token, serverId, "Java", "Fabric", server.getServerVersion(), Duration.ofSeconds(heartbeat))
+        .withDataDirectory(configDir.resolve("uwbp-fabric-bridge"))
+        .applyOptions(props);
   }
 
   private static boolean setDefault(Properties props, String key, String value) {
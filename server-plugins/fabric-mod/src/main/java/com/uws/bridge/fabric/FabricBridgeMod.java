@@ -2,15 +2,23 @@ package com.uws.bridge.fabric;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 import com.mojang.authlib.GameProfile;
 import com.uws.bridge.common.BridgeRequest;
 import com.uws.bridge.common.BridgeRequestHandler;
 import com.uws.bridge.common.BridgeResponse;
 import com.uws.bridge.common.BridgeServer;
-import java.util.Set;
+import com.uws.bridge.common.CpuSampler;
+import com.uws.bridge.common.MainThreadQueue.Lane;
+import com.uws.bridge.common.PayloadWriter;
+import com.uws.bridge.common.Payloads;
+import com.uws.bridge.common.SnapshotStore;
+import com.uws.bridge.common.TopicRegistry;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 import net.fabricmc.api.DedicatedServerModInitializer;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
@@ -31,7 +39,9 @@ import net.minecraft.server.players.UserWhiteListEntry;
 public class FabricBridgeMod implements DedicatedServerModInitializer, BridgeRequestHandler {
   private BridgeServer bridgeServer;
   private MinecraftServer server;
-  private final Set<String> subscribedTopics = ConcurrentHashMap.newKeySet();
+  private volatile boolean playerHooksActive;
+  private volatile boolean chatHooksActive;
+  private volatile boolean tickHooksActive;
   private int tickCounter;
 
   @Override
@@ -39,37 +49,66 @@ public class FabricBridgeMod implements DedicatedServerModInitializer, BridgeReq
     ServerLifecycleEvents.SERVER_STARTING.register(this::onServerStarting);
     ServerLifecycleEvents.SERVER_STOPPING.register(this::onServerStopping);
 
-    ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> emitPlayerEvent("join", handler.player));
-    ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> emitPlayerEvent("quit", handler.player));
+    ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> {
+      if (playerHooksActive) {
+        emitPlayerEvent("join", handler.player);
+      }
+      SnapshotStore snapshots = snapshots();
+      if (snapshots != null) {
+        snapshotPlayer(snapshots, handler.player);
+        snapshots.publishPlayers(server.getMaxPlayers());
+      }
+    });
+    ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> {
+      if (playerHooksActive) {
+        emitPlayerEvent("quit", handler.player);
+      }
+      SnapshotStore snapshots = snapshots();
+      if (snapshots != null) {
+        snapshots.removePlayer(handler.player.getUUID());
+        snapshots.publishPlayers(server.getMaxPlayers());
+      }
+    });
 
     ServerMessageEvents.CHAT.register((SignedMessage message, ServerPlayer sender, MessageType.Parameters params) -> {
-      if (!subscribedTopics.contains("chat.ingame")) {
+      if (!chatHooksActive) {
         return;
       }
-      JsonObject data = new JsonObject();
-      data.addProperty("eventId", UUID.randomUUID().toString());
-      data.addProperty("timestamp", System.currentTimeMillis());
-      data.addProperty("player", sender.getGameProfile().getName());
-      data.addProperty("message", message.getContent().getString());
-      broadcast("events.chat", data);
+      broadcast("chat.ingame", "events.chat", Payloads.chatEvent(
+          bridgeServer.nextId(), System.currentTimeMillis(), sender.getGameProfile().getName(), null, message.getContent().getString()));
+    });
+
+    ServerTickEvents.START_SERVER_TICK.register(server -> {
+      BridgeServer current = bridgeServer;
+      if (current != null) {
+        current.tickStarted();
+      }
     });
 
     ServerTickEvents.END_SERVER_TICK.register(server -> {
       if (this.server == null) {
         return;
       }
+      BridgeServer current = bridgeServer;
+      if (current != null) {
+        current.getMainThreadQueue().drain();
+        current.tickEnded();
+      }
       tickCounter++;
-      if (tickCounter % 20 != 0 || !subscribedTopics.contains("metrics.tps")) {
+      if (tickCounter % 20 != 0) {
         return;
       }
-      double mspt = this.server.getAverageTickTime();
-      double tps = Math.min(1000.0 / Math.max(mspt, 0.001), 20.0);
-      JsonObject metrics = new JsonObject();
-      metrics.addProperty("tps", Math.round(tps * 100.0) / 100.0);
-      metrics.addProperty("mspt", Math.round(mspt * 100.0) / 100.0);
-      metrics.addProperty("players", this.server.getPlayerCount());
-      metrics.addProperty("maxPlayers", this.server.getMaxPlayers());
-      broadcast("metrics.tps", metrics);
+      if (current != null) {
+        double mspt = server.getAverageTickTime();
+        current.recordTick(Math.min(1000.0 / Math.max(mspt, 0.001), 20.0), mspt, server.getPlayerCount(), server.getMaxPlayers());
+      }
+      SnapshotStore snapshots = snapshots();
+      if (snapshots != null) {
+        sampleSnapshots(snapshots);
+      }
+      if (tickHooksActive) {
+        broadcast("metrics.tps", "metrics.tps", tickLoad());
+      }
     });
   }
 
@@ -78,6 +117,7 @@ public class FabricBridgeMod implements DedicatedServerModInitializer, BridgeReq
     try {
       this.bridgeServer = new BridgeServer(FabricBridgeConfig.load(server), java.util.logging.Logger.getLogger("UwbpFabricBridge"), this);
       this.bridgeServer.setReuseAddr(true);
+      bindTopicHooks();
       this.bridgeServer.start();
     } catch (Exception ex) {
       ex.printStackTrace();
@@ -95,6 +135,13 @@ public class FabricBridgeMod implements DedicatedServerModInitializer, BridgeReq
     this.server = null;
   }
 
+  private void bindTopicHooks() {
+    TopicRegistry topics = bridgeServer.getTopics();
+    topics.bind("players.activity", () -> playerHooksActive = true, () -> playerHooksActive = false);
+    topics.bind("chat.ingame", () -> chatHooksActive = true, () -> chatHooksActive = false);
+    topics.bind("metrics.tps", () -> tickHooksActive = true, () -> tickHooksActive = false);
+  }
+
   @Override
   public CompletableFuture<BridgeResponse> handle(BridgeRequest request) {
     if (server == null) {
@@ -104,32 +151,48 @@ public class FabricBridgeMod implements DedicatedServerModInitializer, BridgeReq
       case "getCapabilities":
         return CompletableFuture.completedFuture(BridgeResponse.success(buildCapabilities()));
       case "getServerInfo":
-        return runOnServer(this::buildServerInfo);
+        return bridgeServer.getSnapshots().serve(request, () -> runOnServer(Lane.BULK, this::buildServerInfo));
       case "getPlayers":
-        return runOnServer(this::buildPlayers);
+        return bridgeServer.getSnapshots().serve(request, () -> runOnServer(Lane.BULK, this::buildPlayers));
       case "getUsage":
-        return runOnServer(this::buildUsage);
+        if (bridgeServer.getSnapshots().hasTick(request)) {
+          return CompletableFuture.completedFuture(buildUsage(bridgeServer.getSnapshots().getMspt()));
+        }
+        return runOnServer(Lane.BULK, () -> buildUsage(server.getAverageTickTime()));
       case "control":
-        return runOnServer(() -> handleControl(request.getData()));
+        return runOnServer(Lane.forControl(request.getData()), () -> handleControl(request.getData()));
       case "console.exec":
-        return runOnServer(() -> handleConsole(request.getData()));
-      case "subscribe":
-        return CompletableFuture.completedFuture(handleSubscribe(request.getData()));
+        return runOnServer(Lane.NORMAL, () -> handleConsole(request.getData()));
       default:
         return CompletableFuture.completedFuture(BridgeResponse.failure("unsupported command"));
     }
   }
 
-  private CompletableFuture<BridgeResponse> runOnServer(Supplier<BridgeResponse> supplier) {
-    CompletableFuture<BridgeResponse> future = new CompletableFuture<>();
-    server.execute(() -> {
-      try {
-        future.complete(supplier.get());
-      } catch (Throwable throwable) {
-        future.completeExceptionally(throwable);
-      }
-    });
-    return future;
+  private CompletableFuture<BridgeResponse> runOnServer(Lane lane, Supplier<BridgeResponse> supplier) {
+    return bridgeServer.runOnMainThread(lane, supplier);
+  }
+
+  private SnapshotStore snapshots() {
+    BridgeServer current = bridgeServer;
+    return current != null && current.getSnapshots().isEnabled() ? current.getSnapshots() : null;
+  }
+
+  private void sampleSnapshots(SnapshotStore snapshots) {
+    for (ServerPlayer player : server.getPlayerList().getPlayers()) {
+      snapshotPlayer(snapshots, player);
+    }
+    snapshots.sweepPlayers(server.getMaxPlayers());
+    int stamp = Objects.hash(server.getPlayerCount(), server.getMaxPlayers(), server.getMotd(),
+        server.getPlayerList().isUsingWhitelist(), server.usesAuthentication());
+    snapshots.publish(SnapshotStore.SERVER_INFO, stamp, () -> buildServerInfo().getPayload());
+  }
+
+  private void snapshotPlayer(SnapshotStore snapshots, ServerPlayer player) {
+    String auth = server.usesAuthentication() ? "online" : "offline";
+    String gameMode = player.gameMode.getGameModeForPlayer().getName();
+    int stamp = Objects.hash(player.connection.latency, gameMode, auth);
+    long now = System.currentTimeMillis();
+    snapshots.updatePlayer(player.getUUID(), stamp, () -> out -> writePlayer(out, player, auth, now));
   }
 
   private JsonObject buildCapabilities() {
@@ -138,6 +201,8 @@ public class FabricBridgeMod implements DedicatedServerModInitializer, BridgeReq
     caps.add("core.info");
     caps.add("players.list");
     caps.add("metrics.tps");
+    caps.add("metrics.lag");
+    caps.add("diag.profiler");
     caps.add("control.runCommand");
     caps.add("control.setWeather");
     caps.add("control.setTime");
@@ -150,11 +215,7 @@ public class FabricBridgeMod implements DedicatedServerModInitializer, BridgeReq
     caps.add("events.chat");
     caps.add("events.metrics");
     data.add("caps", caps);
-    JsonObject limits = new JsonObject();
-    limits.addProperty("rate.qps", 20);
-    limits.addProperty("timeout.ms", 5000);
-    limits.addProperty("maxBatch", 64);
-    data.add("limits", limits);
+    data.add("limits", bridgeServer.getConfig().buildLimits());
     return data;
   }
 
@@ -173,31 +234,50 @@ public class FabricBridgeMod implements DedicatedServerModInitializer, BridgeReq
     return BridgeResponse.success(data);
   }
 
-  private BridgeResponse buildPlayers() {
-    JsonObject data = new JsonObject();
-    JsonArray players = new JsonArray();
-    for (ServerPlayer player : server.getPlayerList().getPlayers()) {
-      JsonObject entry = new JsonObject();
-      entry.addProperty("name", player.getGameProfile().getName());
-      entry.addProperty("uuid", player.getUUID().toString());
-      entry.addProperty("ip", player.getIpAddress());
-      entry.addProperty("platform", "Java");
-      entry.addProperty("auth", server.usesAuthentication() ? "online" : "offline");
-      entry.addProperty("ping", player.connection.latency);
-      entry.addProperty("gamemode", player.gameMode.getGameModeForPlayer().getName());
-      entry.addProperty("firstJoin", 0);
-      entry.addProperty("lastSeen", System.currentTimeMillis());
-      players.add(entry);
+  private PayloadWriter tickLoad() {
+    if (server == null) {
+      return null;
     }
-    data.addProperty("count", players.size());
-    data.add("players", players);
-    data.addProperty("maxPlayers", server.getMaxPlayers());
-    return BridgeResponse.success(data);
+    double mspt = server.getAverageTickTime();
+    double tps = Math.min(1000.0 / Math.max(mspt, 0.001), 20.0);
+    BridgeServer current = bridgeServer;
+    return Payloads.metricsTick(
+        Math.round(tps * 100.0) / 100.0, Math.round(mspt * 100.0) / 100.0, server.getPlayerCount(), server.getMaxPlayers(),
+        current != null ? current.getTickSampler().windows() : null);
+  }
+
+  private BridgeResponse buildPlayers() {
+    String auth = server.usesAuthentication() ? "online" : "offline";
+    long now = System.currentTimeMillis();
+    return BridgeResponse.encoded(out -> {
+      out.beginObject();
+      out.name("count").value(server.getPlayerList().getPlayers().size());
+      out.name("players").beginArray();
+      for (ServerPlayer player : server.getPlayerList().getPlayers()) {
+        writePlayer(out, player, auth, now);
+      }
+      out.endArray();
+      out.name("maxPlayers").value(server.getMaxPlayers());
+      out.endObject();
+    });
+  }
+
+  private void writePlayer(JsonWriter out, ServerPlayer player, String auth, long now) throws IOException {
+    Payloads.writePlayerEntry(
+        out,
+        player.getGameProfile().getName(),
+        player.getUUID().toString(),
+        player.getIpAddress(),
+        auth,
+        player.connection.latency,
+        null,
+        player.gameMode.getGameModeForPlayer().getName(),
+        0,
+        now);
   }
 
-  private BridgeResponse buildUsage() {
+  private BridgeResponse buildUsage(double mspt) {
     JsonObject data = new JsonObject();
-    double mspt = server.getAverageTickTime();
     double tps = Math.min(1000.0 / Math.max(mspt, 0.001), 20.0);
     data.addProperty("tps", Math.round(tps * 100.0) / 100.0);
     Runtime runtime = Runtime.getRuntime();
@@ -205,8 +285,19 @@ public class FabricBridgeMod implements DedicatedServerModInitializer, BridgeReq
     double max = runtime.maxMemory() / 1048576.0;
     data.addProperty("memory", Math.round((used / max) * 10000.0) / 100.0);
     data.addProperty("tickTime", Math.round(mspt * 100.0) / 100.0);
-    data.addProperty("threads", Thread.activeCount());
+    data.addProperty("threads", ManagementFactory.getThreadMXBean().getThreadCount());
     data.addProperty("uptime", System.currentTimeMillis() - server.getStartTime());
+    if (bridgeServer != null) {
+      data.add("transport", bridgeServer.buildTransportStats());
+      data.add("mainThread", bridgeServer.getMainThreadQueue().buildStats());
+      data.add("health", bridgeServer.getHealth().buildStats());
+      data.add("tickTimes", bridgeServer.getTickSampler().buildStats());
+      data.add("lag", bridgeServer.getLagWatchdog().buildStats());
+      CpuSampler cpu = bridgeServer.getCpuSampler();
+      data.addProperty("cpu", cpu.getProcessLoad());
+      data.addProperty("systemCpu", cpu.getSystemLoad());
+      data.add("cpuThreads", cpu.buildTopThreads());
+    }
     return BridgeResponse.success(data);
   }
 
@@ -339,43 +430,21 @@ public class FabricBridgeMod implements DedicatedServerModInitializer, BridgeReq
     return BridgeResponse.success(null);
   }
 
-  private BridgeResponse handleSubscribe(JsonObject payload) {
-    if (payload == null || !payload.has("topics") || !payload.get("topics").isJsonArray()) {
-      return BridgeResponse.failure("missing topics");
-    }
-    payload.getAsJsonArray("topics").forEach(element -> {
-      if (element.isJsonObject() && element.getAsJsonObject().has("name")) {
-        subscribedTopics.add(element.getAsJsonObject().get("name").getAsString());
-      } else if (element.isJsonPrimitive()) {
-        subscribedTopics.add(element.getAsString());
-      }
-    });
-    JsonObject data = new JsonObject();
-    JsonArray arr = new JsonArray();
-    subscribedTopics.forEach(arr::add);
-    data.add("topics", arr);
-    return BridgeResponse.success(data);
-  }
-
   private void emitPlayerEvent(String type, ServerPlayer player) {
-    if (!subscribedTopics.contains("players.activity")) {
+    if (!isSubscribed("players.activity")) {
       return;
     }
-    JsonObject data = new JsonObject();
-    data.addProperty("eventId", UUID.randomUUID().toString());
-    data.addProperty("timestamp", System.currentTimeMillis());
-    data.addProperty("type", type);
-    JsonObject playerData = new JsonObject();
-    playerData.addProperty("name", player.getGameProfile().getName());
-    playerData.addProperty("uuid", player.getUUID().toString());
-    playerData.addProperty("ip", player.getIpAddress());
-    data.add("player", playerData);
-    broadcast("events.player", data);
+    broadcast("players.activity", "events.player", Payloads.playerEvent(
+        bridgeServer.nextId(), System.currentTimeMillis(), type, player.getGameProfile().getName(), player.getUUID().toString(), player.getIpAddress()));
+  }
+
+  private boolean isSubscribed(String topic) {
+    return bridgeServer != null && bridgeServer.hasSubscribers(topic);
   }
 
-  private void broadcast(String cmd, JsonObject payload) {
+  private void broadcast(String topic, String cmd, PayloadWriter payload) {
     if (bridgeServer != null) {
-      bridgeServer.broadcast(cmd, payload);
+      bridgeServer.broadcast(topic, cmd, payload);
     }
   }
 }
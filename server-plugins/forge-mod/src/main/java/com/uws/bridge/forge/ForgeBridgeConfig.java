@@ -32,6 +32,9 @@ public final class ForgeBridgeConfig {
     dirty |= setDefault(props, "token", "change-me");
     dirty |= setDefault(props, "serverId", server.getServerModName().toLowerCase() + "-main");
     dirty |= setDefault(props, "heartbeatSeconds", "30");
+    dirty |= setDefault(props, "maxBatch", "64");
+    dirty |= setDefault(props, "rateQps", "20");
+    dirty |= setDefault(props, "timeoutMs", "5000");
 
     if (dirty) {
       try {
@@ -49,7 +52,9 @@ public final class ForgeBridgeConfig {
     String serverId = props.getProperty("serverId", "forge-main");
     int heartbeat = Integer.parseInt(props.getProperty("heartbeatSeconds", "30"));
 
-    return new BridgeConfig(bind, port, token, serverId, "Java", "Forge", server.getServerVersion(), Duration.ofSeconds(heartbeat));
+    return new BridgeConfig(bind, port, token, serverId, "Java", "Forge", server.getServerVersion(), Duration.ofSeconds(heartbeat))
+        .withDataDirectory(configDir.resolve("uwbp-forge-bridge"))
+        .applyOptions(props);
   }
 
   private static boolean setDefault(Properties props, String key, String value) {
@@ -2,15 +2,24 @@ package com.uws.bridge.neoforge;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 import com.mojang.authlib.GameProfile;
 import com.uws.bridge.common.BridgeRequest;
 import com.uws.bridge.common.BridgeRequestHandler;
 import com.uws.bridge.common.BridgeResponse;
 import com.uws.bridge.common.BridgeServer;
-import java.util.Set;
+import com.uws.bridge.common.CpuSampler;
+import com.uws.bridge.common.DimensionStats;
+import com.uws.bridge.common.MainThreadQueue.Lane;
+import com.uws.bridge.common.PayloadWriter;
+import com.uws.bridge.common.Payloads;
+import com.uws.bridge.common.SnapshotStore;
+import com.uws.bridge.common.TopicRegistry;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.network.chat.Component;
@@ -20,22 +29,36 @@ import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.server.players.PlayerList;
 import net.minecraft.server.players.UserBanListEntry;
 import net.minecraft.server.players.UserWhiteListEntry;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.chunk.LevelChunk;
 import net.neoforged.bus.api.SubscribeEvent;
 import net.neoforged.fml.common.Mod;
 import net.neoforged.neoforge.common.NeoForge;
 import net.neoforged.neoforge.event.ServerChatEvent;
 import net.neoforged.neoforge.event.TickEvent;
+import net.neoforged.neoforge.event.entity.EntityJoinLevelEvent;
+import net.neoforged.neoforge.event.entity.EntityLeaveLevelEvent;
 import net.neoforged.neoforge.event.entity.player.PlayerEvent;
+import net.neoforged.neoforge.event.level.ChunkEvent;
+import net.neoforged.neoforge.event.level.LevelEvent;
+import net.neoforged.bus.api.EventPriority;
 
 @Mod("uwbpneoforgebridge")
 public class NeoForgeBridgeMod implements BridgeRequestHandler {
   private BridgeServer bridgeServer;
   private MinecraftServer server;
-  private final Set<String> subscribedTopics = ConcurrentHashMap.newKeySet();
+  private final PlayerHooks playerHooks = new PlayerHooks();
+  private final ChatHooks chatHooks = new ChatHooks();
+  private final TickHooks tickHooks = new TickHooks();
+  private final SnapshotHooks snapshotHooks = new SnapshotHooks();
+  private final DimensionHooks dimensionHooks = new DimensionHooks();
+  private final DimensionStats dimensions = new DimensionStats();
   private int tickCounter;
+  private int sampleTicks;
 
   public NeoForgeBridgeMod() {
     NeoForge.EVENT_BUS.register(this);
+    NeoForge.EVENT_BUS.register(dimensionHooks);
   }
 
   @SubscribeEvent
@@ -44,7 +67,11 @@ public class NeoForgeBridgeMod implements BridgeRequestHandler {
     try {
       this.bridgeServer = new BridgeServer(NeoForgeBridgeConfig.load(server), java.util.logging.Logger.getLogger("UwbpNeoForgeBridge"), this);
       this.bridgeServer.setReuseAddr(true);
+      bindTopicHooks();
       this.bridgeServer.start();
+      if (bridgeServer.getSnapshots().isEnabled()) {
+        NeoForge.EVENT_BUS.register(snapshotHooks);
+      }
     } catch (Exception ex) {
       ex.printStackTrace();
     }
@@ -52,6 +79,7 @@ public class NeoForgeBridgeMod implements BridgeRequestHandler {
 
   @SubscribeEvent
   public void onServerStopping(net.neoforged.neoforge.event.server.ServerStoppingEvent event) {
+    NeoForge.EVENT_BUS.unregister(snapshotHooks);
     if (bridgeServer != null) {
       try {
         bridgeServer.stop(0);
@@ -63,45 +91,46 @@ public class NeoForgeBridgeMod implements BridgeRequestHandler {
   }
 
   @SubscribeEvent
-  public void onPlayerLogin(PlayerEvent.PlayerLoggedInEvent event) {
-    emitPlayerEvent("join", event.getEntity());
-  }
-
-  @SubscribeEvent
-  public void onPlayerLogout(PlayerEvent.PlayerLoggedOutEvent event) {
-    emitPlayerEvent("quit", event.getEntity());
-  }
-
-  @SubscribeEvent
-  public void onChat(ServerChatEvent event) {
-    if (!subscribedTopics.contains("chat.ingame")) {
+  public void onServerTick(TickEvent.ServerTickEvent event) {
+    BridgeServer current = bridgeServer;
+    if (current == null) {
       return;
     }
-    JsonObject data = new JsonObject();
-    data.addProperty("eventId", UUID.randomUUID().toString());
-    data.addProperty("timestamp", System.currentTimeMillis());
-    data.addProperty("player", event.getPlayer().getScoreboardName());
-    data.addProperty("message", event.getMessage().getString());
-    broadcast("events.chat", data);
-  }
-
-  @SubscribeEvent
-  public void onServerTick(TickEvent.ServerTickEvent event) {
-    if (event.phase != TickEvent.Phase.END || server == null) {
+    if (event.phase == TickEvent.Phase.START) {
+      current.tickStarted();
       return;
     }
-    tickCounter++;
-    if (tickCounter % 20 != 0 || !subscribedTopics.contains("metrics.tps")) {
+    current.getMainThreadQueue().drain();
+    current.tickEnded();
+    if (server == null || ++sampleTicks % 20 != 0) {
       return;
     }
     double mspt = server.getAverageTickTime();
-    double tps = Math.min(1000.0 / Math.max(mspt, 0.001), 20.0);
-    JsonObject metrics = new JsonObject();
-    metrics.addProperty("tps", Math.round(tps * 100.0) / 100.0);
-    metrics.addProperty("mspt", Math.round(mspt * 100.0) / 100.0);
-    metrics.addProperty("players", server.getPlayerCount());
-    metrics.addProperty("maxPlayers", server.getMaxPlayers());
-    broadcast("metrics.tps", metrics);
+    current.recordTick(Math.min(1000.0 / Math.max(mspt, 0.001), 20.0), mspt, server.getPlayerCount(), server.getMaxPlayers());
+    if (current.getSnapshots().isEnabled()) {
+      sampleSnapshots(current.getSnapshots());
+    }
+    for (ServerLevel level : server.getAllLevels()) {
+      dimension(level).setChunks(level.getChunkSource().getLoadedChunksCount());
+    }
+    if (isSubscribed("metrics.dimensions")) {
+      broadcast("metrics.dimensions", "metrics.dimensions", dimensions.payload());
+    }
+  }
+
+  private DimensionStats.Dimension dimension(Level level) {
+    return dimensions.dimension(level.dimension(), key -> key.location().toString());
+  }
+
+  private DimensionStats.Dimension existing(Level level) {
+    return dimensions.find(level.dimension());
+  }
+
+  private void bindTopicHooks() {
+    TopicRegistry topics = bridgeServer.getTopics();
+    topics.bind("players.activity", () -> NeoForge.EVENT_BUS.register(playerHooks), () -> NeoForge.EVENT_BUS.unregister(playerHooks));
+    topics.bind("chat.ingame", () -> NeoForge.EVENT_BUS.register(chatHooks), () -> NeoForge.EVENT_BUS.unregister(chatHooks));
+    topics.bind("metrics.tps", () -> NeoForge.EVENT_BUS.register(tickHooks), () -> NeoForge.EVENT_BUS.unregister(tickHooks));
   }
 
   @Override
@@ -113,32 +142,43 @@ public class NeoForgeBridgeMod implements BridgeRequestHandler {
       case "getCapabilities":
         return CompletableFuture.completedFuture(BridgeResponse.success(buildCapabilities()));
       case "getServerInfo":
-        return runOnServer(this::buildServerInfo);
+        return bridgeServer.getSnapshots().serve(request, () -> runOnServer(Lane.BULK, this::buildServerInfo));
       case "getPlayers":
-        return runOnServer(this::buildPlayers);
+        return bridgeServer.getSnapshots().serve(request, () -> runOnServer(Lane.BULK, this::buildPlayers));
       case "getUsage":
-        return runOnServer(this::buildUsage);
+        if (bridgeServer.getSnapshots().hasTick(request)) {
+          return CompletableFuture.completedFuture(buildUsage(bridgeServer.getSnapshots().getMspt()));
+        }
+        return runOnServer(Lane.BULK, () -> buildUsage(server.getAverageTickTime()));
       case "control":
-        return runOnServer(() -> handleControl(request.getData()));
+        return runOnServer(Lane.forControl(request.getData()), () -> handleControl(request.getData()));
       case "console.exec":
-        return runOnServer(() -> handleConsole(request.getData()));
-      case "subscribe":
-        return CompletableFuture.completedFuture(handleSubscribe(request.getData()));
+        return runOnServer(Lane.NORMAL, () -> handleConsole(request.getData()));
       default:
         return CompletableFuture.completedFuture(BridgeResponse.failure("unsupported command"));
     }
   }
 
-  private CompletableFuture<BridgeResponse> runOnServer(Supplier<BridgeResponse> supplier) {
-    CompletableFuture<BridgeResponse> future = new CompletableFuture<>();
-    server.execute(() -> {
-      try {
-        future.complete(supplier.get());
-      } catch (Throwable throwable) {
-        future.completeExceptionally(throwable);
-      }
-    });
-    return future;
+  private CompletableFuture<BridgeResponse> runOnServer(Lane lane, Supplier<BridgeResponse> supplier) {
+    return bridgeServer.runOnMainThread(lane, supplier);
+  }
+
+  private void sampleSnapshots(SnapshotStore snapshots) {
+    for (ServerPlayer player : server.getPlayerList().getPlayers()) {
+      snapshotPlayer(snapshots, player);
+    }
+    snapshots.sweepPlayers(server.getMaxPlayers());
+    int stamp = Objects.hash(server.getPlayerCount(), server.getMaxPlayers(), server.getMotd(),
+        server.getPlayerList().isUsingWhitelist(), server.usesAuthentication());
+    snapshots.publish(SnapshotStore.SERVER_INFO, stamp, () -> buildServerInfo().getPayload());
+  }
+
+  private void snapshotPlayer(SnapshotStore snapshots, ServerPlayer player) {
+    String auth = server.usesAuthentication() ? "online" : "offline";
+    String gameMode = player.gameMode.getGameModeForPlayer().getName();
+    int stamp = Objects.hash(player.connection.latency, gameMode, auth);
+    long now = System.currentTimeMillis();
+    snapshots.updatePlayer(player.getUUID(), stamp, () -> out -> writePlayer(out, player, auth, now));
   }
 
   private JsonObject buildCapabilities() {
@@ -147,6 +187,9 @@ public class NeoForgeBridgeMod implements BridgeRequestHandler {
     caps.add("core.info");
     caps.add("players.list");
     caps.add("metrics.tps");
+    caps.add("metrics.lag");
+    caps.add("diag.profiler");
+    caps.add("metrics.dimensions");
     caps.add("control.runCommand");
     caps.add("control.setWeather");
     caps.add("control.setTime");
@@ -159,11 +202,7 @@ public class NeoForgeBridgeMod implements BridgeRequestHandler {
     caps.add("events.chat");
     caps.add("events.metrics");
     data.add("caps", caps);
-    JsonObject limits = new JsonObject();
-    limits.addProperty("rate.qps", 20);
-    limits.addProperty("timeout.ms", 5000);
-    limits.addProperty("maxBatch", 64);
-    data.add("limits", limits);
+    data.add("limits", bridgeServer.getConfig().buildLimits());
     return data;
   }
 
@@ -182,31 +221,50 @@ public class NeoForgeBridgeMod implements BridgeRequestHandler {
     return BridgeResponse.success(data);
   }
 
+  private PayloadWriter tickLoad() {
+    if (server == null) {
+      return null;
+    }
+    double mspt = server.getAverageTickTime();
+    double tps = Math.min(1000.0 / Math.max(mspt, 0.001), 20.0);
+    BridgeServer current = bridgeServer;
+    return Payloads.metricsTick(
+        Math.round(tps * 100.0) / 100.0, Math.round(mspt * 100.0) / 100.0, server.getPlayerCount(), server.getMaxPlayers(),
+        current != null ? current.getTickSampler().windows() : null);
+  }
+
   private BridgeResponse buildPlayers() {
-    JsonObject data = new JsonObject();
-    JsonArray players = new JsonArray();
-    for (ServerPlayer player : server.getPlayerList().getPlayers()) {
-      JsonObject entry = new JsonObject();
-      entry.addProperty("name", player.getGameProfile().getName());
-      entry.addProperty("uuid", player.getUUID().toString());
-      entry.addProperty("ip", player.getIpAddress());
-      entry.addProperty("platform", "Java");
-      entry.addProperty("auth", server.usesAuthentication() ? "online" : "offline");
-      entry.addProperty("ping", player.connection.latency);
-      entry.addProperty("gamemode", player.gameMode.getGameModeForPlayer().getName());
-      entry.addProperty("firstJoin", 0);
-      entry.addProperty("lastSeen", System.currentTimeMillis());
-      players.add(entry);
-    }
-    data.addProperty("count", players.size());
-    data.add("players", players);
-    data.addProperty("maxPlayers", server.getMaxPlayers());
-    return BridgeResponse.success(data);
+    String auth = server.usesAuthentication() ? "online" : "offline";
+    long now = System.currentTimeMillis();
+    return BridgeResponse.encoded(out -> {
+      out.beginObject();
+      out.name("count").value(server.getPlayerList().getPlayers().size());
+      out.name("players").beginArray();
+      for (ServerPlayer player : server.getPlayerList().getPlayers()) {
+        writePlayer(out, player, auth, now);
+      }
+      out.endArray();
+      out.name("maxPlayers").value(server.getMaxPlayers());
+      out.endObject();
+    });
+  }
+
+  private void writePlayer(JsonWriter out, ServerPlayer player, String auth, long now) throws IOException {
+    Payloads.writePlayerEntry(
+        out,
+        player.getGameProfile().getName(),
+        player.getUUID().toString(),
+        player.getIpAddress(),
+        auth,
+        player.connection.latency,
+        null,
+        player.gameMode.getGameModeForPlayer().getName(),
+        0,
+        now);
   }
 
-  private BridgeResponse buildUsage() {
+  private BridgeResponse buildUsage(double mspt) {
     JsonObject data = new JsonObject();
-    double mspt = server.getAverageTickTime();
     double tps = Math.min(1000.0 / Math.max(mspt, 0.001), 20.0);
     data.addProperty("tps", Math.round(tps * 100.0) / 100.0);
     Runtime runtime = Runtime.getRuntime();
@@ -214,8 +272,20 @@ public class NeoForgeBridgeMod implements BridgeRequestHandler {
     double max = runtime.maxMemory() / 1048576.0;
     data.addProperty("memory", Math.round((used / max) * 10000.0) / 100.0);
     data.addProperty("tickTime", Math.round(mspt * 100.0) / 100.0);
-    data.addProperty("threads", Thread.activeCount());
+    data.addProperty("threads", ManagementFactory.getThreadMXBean().getThreadCount());
     data.addProperty("uptime", System.currentTimeMillis() - server.getStartTime());
+    if (bridgeServer != null) {
+      data.add("transport", bridgeServer.buildTransportStats());
+      data.add("mainThread", bridgeServer.getMainThreadQueue().buildStats());
+      data.add("health", bridgeServer.getHealth().buildStats());
+      data.add("tickTimes", bridgeServer.getTickSampler().buildStats());
+      data.add("lag", bridgeServer.getLagWatchdog().buildStats());
+      CpuSampler cpu = bridgeServer.getCpuSampler();
+      data.addProperty("cpu", cpu.getProcessLoad());
+      data.addProperty("systemCpu", cpu.getSystemLoad());
+      data.add("cpuThreads", cpu.buildTopThreads());
+      data.add("dimensions", dimensions.buildStats());
+    }
     return BridgeResponse.success(data);
   }
 
@@ -348,43 +418,152 @@ public class NeoForgeBridgeMod implements BridgeRequestHandler {
     return BridgeResponse.success(null);
   }
 
-  private BridgeResponse handleSubscribe(JsonObject payload) {
-    if (payload == null || !payload.has("topics") || !payload.get("topics").isJsonArray()) {
-      return BridgeResponse.failure("missing topics");
+  private void emitPlayerEvent(String type, ServerPlayer player) {
+    if (!isSubscribed("players.activity")) {
+      return;
+    }
+    broadcast("players.activity", "events.player", Payloads.playerEvent(
+        bridgeServer.nextId(), System.currentTimeMillis(), type, player.getGameProfile().getName(), player.getUUID().toString(), player.getIpAddress()));
+  }
+
+  private boolean isSubscribed(String topic) {
+    return bridgeServer != null && bridgeServer.hasSubscribers(topic);
+  }
+
+  private void broadcast(String topic, String cmd, PayloadWriter payload) {
+    if (bridgeServer != null) {
+      bridgeServer.broadcast(topic, cmd, payload);
+    }
+  }
+
+  public final class PlayerHooks {
+    @SubscribeEvent
+    public void onPlayerLogin(PlayerEvent.PlayerLoggedInEvent event) {
+      emitPlayerEvent("join", event.getEntity());
+    }
+
+    @SubscribeEvent
+    public void onPlayerLogout(PlayerEvent.PlayerLoggedOutEvent event) {
+      emitPlayerEvent("quit", event.getEntity());
     }
-    payload.getAsJsonArray("topics").forEach(element -> {
-      if (element.isJsonObject() && element.getAsJsonObject().has("name")) {
-        subscribedTopics.add(element.getAsJsonObject().get("name").getAsString());
-      } else if (element.isJsonPrimitive()) {
-        subscribedTopics.add(element.getAsString());
+  }
+
+  public final class ChatHooks {
+    @SubscribeEvent
+    public void onChat(ServerChatEvent event) {
+      if (!isSubscribed("chat.ingame")) {
+        return;
       }
-    });
-    JsonObject data = new JsonObject();
-    JsonArray arr = new JsonArray();
-    subscribedTopics.forEach(arr::add);
-    data.add("topics", arr);
-    return BridgeResponse.success(data);
+      broadcast("chat.ingame", "events.chat", Payloads.chatEvent(
+          bridgeServer.nextId(), System.currentTimeMillis(), event.getPlayer().getScoreboardName(), null, event.getMessage().getString()));
+    }
   }
 
-  private void emitPlayerEvent(String type, ServerPlayer player) {
-    if (!subscribedTopics.contains("players.activity")) {
-      return;
+  public final class TickHooks {
+    @SubscribeEvent
+    public void onServerTick(TickEvent.ServerTickEvent event) {
+      if (event.phase != TickEvent.Phase.END || server == null) {
+        return;
+      }
+      tickCounter++;
+      if (tickCounter % 20 != 0 || !isSubscribed("metrics.tps")) {
+        return;
+      }
+      broadcast("metrics.tps", "metrics.tps", tickLoad());
     }
-    JsonObject data = new JsonObject();
-    data.addProperty("eventId", UUID.randomUUID().toString());
-    data.addProperty("timestamp", System.currentTimeMillis());
-    data.addProperty("type", type);
-    JsonObject playerData = new JsonObject();
-    playerData.addProperty("name", player.getGameProfile().getName());
-    playerData.addProperty("uuid", player.getUUID().toString());
-    playerData.addProperty("ip", player.getIpAddress());
-    data.add("player", playerData);
-    broadcast("events.player", data);
-  }
-
-  private void broadcast(String cmd, JsonObject payload) {
-    if (bridgeServer != null) {
-      bridgeServer.broadcast(cmd, payload);
+  }
+
+  public final class DimensionHooks {
+    private static final int RECOUNT_BUDGET = 16;
+
+    @SubscribeEvent
+    public void onLevelTick(TickEvent.LevelTickEvent event) {
+      if (!event.side.isServer() || !(event.level instanceof ServerLevel)) {
+        return;
+      }
+      DimensionStats.Dimension dimension = dimension(event.level);
+      if (event.phase == TickEvent.Phase.START) {
+        dimension.tickStart();
+      } else {
+        dimension.tickEnd();
+        dimension.recount(LevelChunk.class, chunk -> chunk.getBlockEntities().size(), RECOUNT_BUDGET);
+      }
+    }
+
+    @SubscribeEvent(priority = EventPriority.LOWEST)
+    public void onEntityJoin(EntityJoinLevelEvent event) {
+      if (event.getLevel() instanceof ServerLevel) {
+        dimension(event.getLevel()).entityAdded();
+      }
+    }
+
+    @SubscribeEvent
+    public void onEntityLeave(EntityLeaveLevelEvent event) {
+      DimensionStats.Dimension dimension = event.getLevel() instanceof ServerLevel ? existing(event.getLevel()) : null;
+      if (dimension != null) {
+        dimension.entityRemoved();
+      }
+    }
+
+    @SubscribeEvent
+    public void onChunkLoad(ChunkEvent.Load event) {
+      if (event.getLevel() instanceof ServerLevel && event.getChunk() instanceof LevelChunk) {
+        LevelChunk chunk = (LevelChunk) event.getChunk();
+        dimension((ServerLevel) event.getLevel()).chunkLoaded(chunk, chunk.getBlockEntities().size());
+      }
+    }
+
+    @SubscribeEvent
+    public void onChunkUnload(ChunkEvent.Unload event) {
+      DimensionStats.Dimension dimension = event.getLevel() instanceof ServerLevel ? existing((ServerLevel) event.getLevel()) : null;
+      if (dimension != null) {
+        dimension.chunkUnloaded(event.getChunk());
+      }
+    }
+
+    @SubscribeEvent
+    public void onLevelUnload(LevelEvent.Unload event) {
+      if (event.getLevel() instanceof ServerLevel) {
+        dimensions.remove(((ServerLevel) event.getLevel()).dimension());
+      }
+    }
+  }
+
+  public final class SnapshotHooks {
+    @SubscribeEvent
+    public void onPlayerLogin(PlayerEvent.PlayerLoggedInEvent event) {
+      if (bridgeServer == null || server == null) {
+        return;
+      }
+      SnapshotStore snapshots = bridgeServer.getSnapshots();
+      snapshotPlayer(snapshots, event.getEntity());
+      snapshots.publishPlayers(server.getMaxPlayers());
+    }
+
+    @SubscribeEvent
+    public void onPlayerLogout(PlayerEvent.PlayerLoggedOutEvent event) {
+      if (bridgeServer == null || server == null) {
+        return;
+      }
+      SnapshotStore snapshots = bridgeServer.getSnapshots();
+      snapshots.removePlayer(event.getEntity().getUUID());
+      snapshots.publishPlayers(server.getMaxPlayers());
+    }
+
+    @SubscribeEvent
+    public void onGameModeChange(PlayerEvent.PlayerChangeGameModeEvent event) {
+      ServerPlayer player = event.getEntity();
+      MinecraftServer current = server;
+      if (current == null) {
+        return;
+      }
+      current.execute(() -> {
+        if (bridgeServer != null && server != null && server.getPlayerList().getPlayers().contains(player)) {
+          SnapshotStore snapshots = bridgeServer.getSnapshots();
+          snapshotPlayer(snapshots, player);
+          snapshots.publishPlayers(server.getMaxPlayers());
+        }
+      });
     }
   }
 }
@@ -5,12 +5,22 @@ import net.minecraft.server.MinecraftServer;
 public final class ServerTickEvents {
   private ServerTickEvents() {}
 
+  public static final StartTick START_SERVER_TICK = new StartTick();
   public static final EndTick END_SERVER_TICK = new EndTick();
 
+  public static class StartTick {
+    public void register(ServerStartTickCallback callback) {}
+  }
+
   public static class EndTick {
     public void register(ServerTickCallback callback) {}
   }
 
+  @FunctionalInterface
+  public interface ServerStartTickCallback {
+    void onStartTick(MinecraftServer server);
+  }
+
   @FunctionalInterface
   public interface ServerTickCallback {
     void onEndTick(MinecraftServer server);
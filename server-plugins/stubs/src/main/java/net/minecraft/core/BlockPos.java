@@ -0,0 +1,3 @@
+package net.minecraft.core;
+
+public class BlockPos {}
@@ -0,0 +1,13 @@
+package net.minecraft.resources;
+
+public class ResourceKey<T> {
+  private final ResourceLocation location;
+
+  public ResourceKey(ResourceLocation location) {
+    this.location = location;
+  }
+
+  public ResourceLocation location() {
+    return location;
+  }
+}
@@ -0,0 +1,14 @@
+package net.minecraft.resources;
+
+public class ResourceLocation {
+  private final String id;
+
+  public ResourceLocation(String id) {
+    this.id = id;
+  }
+
+  @Override
+  public String toString() {
+    return id;
+  }
+}
@@ -66,6 +66,10 @@ public class MinecraftServer {
     return new ServerLevel();
   }
 
+  public Iterable<ServerLevel> getAllLevels() {
+    return java.util.List.of(overworld());
+  }
+
   public ProfileCache getProfileCache() {
     return profileCache;
   }
@@ -0,0 +1,7 @@
+package net.minecraft.server.level;
+
+public class ServerChunkCache {
+  public int getLoadedChunksCount() {
+    return 0;
+  }
+}
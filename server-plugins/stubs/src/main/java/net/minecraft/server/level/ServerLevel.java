@@ -1,7 +1,15 @@
 package net.minecraft.server.level;
 
-public class ServerLevel {
+import net.minecraft.world.level.Level;
+
+public class ServerLevel extends Level {
+  private final ServerChunkCache chunkSource = new ServerChunkCache();
+
   public void setWeatherParameters(int clearDuration, int rainDuration, boolean raining, boolean thundering) {}
 
   public void setDayTime(long time) {}
+
+  public ServerChunkCache getChunkSource() {
+    return chunkSource;
+  }
 }
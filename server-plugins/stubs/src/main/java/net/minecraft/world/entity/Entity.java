@@ -0,0 +1,3 @@
+package net.minecraft.world.entity;
+
+public class Entity {}
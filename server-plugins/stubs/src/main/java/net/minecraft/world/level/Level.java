@@ -0,0 +1,17 @@
+package net.minecraft.world.level;
+
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+
+public class Level implements LevelAccessor {
+  private final ResourceKey<Level> dimension = new ResourceKey<>(new ResourceLocation("minecraft:overworld"));
+
+  public ResourceKey<Level> dimension() {
+    return dimension;
+  }
+
+  @Override
+  public boolean isClientSide() {
+    return false;
+  }
+}
@@ -0,0 +1,5 @@
+package net.minecraft.world.level;
+
+public interface LevelAccessor {
+  boolean isClientSide();
+}
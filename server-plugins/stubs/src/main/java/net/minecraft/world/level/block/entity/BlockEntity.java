@@ -0,0 +1,3 @@
+package net.minecraft.world.level.block.entity;
+
+public class BlockEntity {}
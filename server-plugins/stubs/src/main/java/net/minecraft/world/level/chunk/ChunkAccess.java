@@ -0,0 +1,3 @@
+package net.minecraft.world.level.chunk;
+
+public class ChunkAccess {}
@@ -0,0 +1,14 @@
+package net.minecraft.world.level.chunk;
+
+import java.util.HashMap;
+import java.util.Map;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.block.entity.BlockEntity;
+
+public class LevelChunk extends ChunkAccess {
+  private final Map<BlockPos, BlockEntity> blockEntities = new HashMap<>();
+
+  public Map<BlockPos, BlockEntity> getBlockEntities() {
+    return blockEntities;
+  }
+}
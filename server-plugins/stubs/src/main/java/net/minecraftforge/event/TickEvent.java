@@ -1,13 +1,31 @@
 package net.minecraftforge.event;
 
+import net.minecraft.world.level.Level;
+import net.minecraftforge.fml.LogicalSide;
+
 public class TickEvent {
   public enum Phase { START, END }
 
-  public static class ServerTickEvent {
-    public final Phase phase;
+  public final LogicalSide side;
+  public final Phase phase;
+
+  public TickEvent(LogicalSide side, Phase phase) {
+    this.side = side;
+    this.phase = phase;
+  }
 
+  public static class ServerTickEvent extends TickEvent {
     public ServerTickEvent(Phase phase) {
-      this.phase = phase;
+      super(LogicalSide.SERVER, phase);
+    }
+  }
+
+  public static class LevelTickEvent extends TickEvent {
+    public final Level level;
+
+    public LevelTickEvent(LogicalSide side, Phase phase, Level level) {
+      super(side, phase);
+      this.level = level;
     }
   }
 }
@@ -30,4 +30,10 @@ public class PlayerEvent {
       super(player);
     }
   }
+
+  public static class PlayerChangeGameModeEvent extends PlayerEvent {
+    public PlayerChangeGameModeEvent(ServerPlayer player) {
+      super(player);
+    }
+  }
 }
@@ -0,0 +1,34 @@
+package net.minecraftforge.event.level;
+
+import net.minecraft.world.level.LevelAccessor;
+import net.minecraft.world.level.chunk.ChunkAccess;
+
+public class ChunkEvent {
+  private final ChunkAccess chunk;
+  private final LevelAccessor level;
+
+  public ChunkEvent(ChunkAccess chunk, LevelAccessor level) {
+    this.chunk = chunk;
+    this.level = level;
+  }
+
+  public ChunkAccess getChunk() {
+    return chunk;
+  }
+
+  public LevelAccessor getLevel() {
+    return level;
+  }
+
+  public static class Load extends ChunkEvent {
+    public Load(ChunkAccess chunk, LevelAccessor level) {
+      super(chunk, level);
+    }
+  }
+
+  public static class Unload extends ChunkEvent {
+    public Unload(ChunkAccess chunk, LevelAccessor level) {
+      super(chunk, level);
+    }
+  }
+}
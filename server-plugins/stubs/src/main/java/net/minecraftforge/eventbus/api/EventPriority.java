@@ -0,0 +1,9 @@
+package net.minecraftforge.eventbus.api;
+
+public enum EventPriority {
+  HIGHEST,
+  HIGH,
+  NORMAL,
+  LOW,
+  LOWEST
+}
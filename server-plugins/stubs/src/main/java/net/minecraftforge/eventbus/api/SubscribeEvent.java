@@ -7,4 +7,8 @@ import java.lang.annotation.Target;
 
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
-public @interface SubscribeEvent {}
+public @interface SubscribeEvent {
+  EventPriority priority() default EventPriority.NORMAL;
+
+  boolean receiveCanceled() default false;
+}
@@ -0,0 +1,10 @@
+package net.minecraftforge.fml;
+
+public enum LogicalSide {
+  CLIENT,
+  SERVER;
+
+  public boolean isServer() {
+    return this == SERVER;
+  }
+}
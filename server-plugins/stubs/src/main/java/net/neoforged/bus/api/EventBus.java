@@ -2,4 +2,6 @@ package net.neoforged.bus.api;
 
 public class EventBus {
   public void register(Object listener) {}
+
+  public void unregister(Object listener) {}
 }
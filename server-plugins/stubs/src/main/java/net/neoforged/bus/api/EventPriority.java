@@ -0,0 +1,9 @@
+package net.neoforged.bus.api;
+
+public enum EventPriority {
+  HIGHEST,
+  HIGH,
+  NORMAL,
+  LOW,
+  LOWEST
+}